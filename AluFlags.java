@@ -0,0 +1,57 @@
+// precomputed ALU results for the table engine
+// ADD / SUB entries hold the result byte in the low 8 bits and the CY/AC/OV/P bits
+// (at their PSW positions) in the high 8 bits, so one load updates ACC and the flags.
+// flag rules mirror the calculate* helpers in InstructionSet.
+final class AluFlags {
+    static final int CY = 0x80;
+    static final int AC = 0x40;
+    static final int OV = 0x04;
+    static final int P = 0x01;
+
+    static final char[] ADD = new char[2 * 256 * 256];
+    static final char[] SUB = new char[2 * 256 * 256];
+    static final boolean[] PARITY = new boolean[256];
+
+    static {
+        for (int v = 0; v < 256; v++) {
+            PARITY[v] = (Integer.bitCount(v) & 1) == 0;
+        }
+        for (int carryIn = 0; carryIn < 2; carryIn++) {
+            for (int a = 0; a < 256; a++) {
+                for (int b = 0; b < 256; b++) {
+                    int i = index(a, b, carryIn);
+                    ADD[i] = (char) addEntry(a, b, carryIn);
+                    SUB[i] = (char) subEntry(a, b, carryIn);
+                }
+            }
+        }
+    }
+
+    private AluFlags() {
+    }
+
+    // a, b are 0..255, carryIn 0 or 1
+    static int index(int a, int b, int carryIn) {
+        return (carryIn << 16) | (a << 8) | b;
+    }
+
+    private static int addEntry(int a, int b, int carryIn) {
+        int result = a + b + carryIn;
+        int flags = 0;
+        if ((result & 0x100) != 0) flags |= CY;
+        if ((a & 0x0F) + (b & 0x0F) + carryIn >= 0x0F) flags |= AC;
+        if (((a ^ b) & 0x80) == 0 && ((a ^ result) & 0x80) != 0) flags |= OV;
+        if (PARITY[result & 0xFF]) flags |= P;
+        return (flags << 8) | (result & 0xFF);
+    }
+
+    private static int subEntry(int a, int b, int carryIn) {
+        int result = a - b - carryIn;
+        int flags = 0;
+        if (a < b + carryIn) flags |= CY;
+        if ((a & 0x0F) < (b & 0x0F) + carryIn) flags |= AC;
+        if (((a ^ b) & 0x80) != 0 && ((a ^ result) & 0x80) != 0) flags |= OV;
+        if (PARITY[result & 0xFF]) flags |= P;
+        return (flags << 8) | (result & 0xFF);
+    }
+}
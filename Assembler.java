@@ -0,0 +1,500 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// two pass 8051 assembler, instruction encodings come from OpcodeTable
+// so it assembles exactly what InstructionSet can execute.
+//   MOV A, #0x56        ; comments start with ; or //
+//   loop: SUBB A, R3    labels end with ':'
+//   SETB P1.0           bit names: Px.y, ACC.y, B.y, PSW.y and the named SFR bits
+//   COUNT EQU 10        directives: ORG, DB, EQU, END
+// numbers: 0x56, 56h, 0b101, 101b, 42, 'A'. $ is the address of the current instruction.
+//   java Assembler program.asm [out.bin]
+class Assembler {
+    private static final String CACHE_VERSION = "asm-v1";
+
+    // name -> opcodes sharing that mnemonic, built once from OpcodeTable
+    private static final Map<String, List<Integer>> OPCODES_BY_NAME = new HashMap<>();
+    private static final String[][] TEMPLATE_OPERANDS = new String[256][];
+    private static final Map<String, Integer> SFR_SYMBOLS = new HashMap<>();
+    private static final Map<String, Integer> BIT_SYMBOLS = new HashMap<>();
+
+    static {
+        for (int opcode = 0; opcode < 256; opcode++) {
+            String mnemonic = OpcodeTable.MNEMONIC[opcode];
+            if (mnemonic == null) {
+                continue;
+            }
+            int space = mnemonic.indexOf(' ');
+            String name = space < 0 ? mnemonic : mnemonic.substring(0, space);
+            TEMPLATE_OPERANDS[opcode] = space < 0 ? new String[0] : mnemonic.substring(space + 1).split(",");
+            OPCODES_BY_NAME.computeIfAbsent(name, k -> new ArrayList<>()).add(opcode);
+        }
+
+        String[] sfrNames = {"P0", "SP", "DPL", "DPH", "PCON", "TCON", "TMOD", "TL0", "TL1", "TH0", "TH1",
+                             "P1", "SCON", "SBUF", "P2", "IE", "P3", "IP", "PSW", "ACC", "B"};
+        int[] sfrAddresses = {0x80, 0x81, 0x82, 0x83, 0x87, 0x88, 0x89, 0x8A, 0x8B, 0x8C, 0x8D,
+                              0x90, 0x98, 0x99, 0xA0, 0xA8, 0xB0, 0xB8, 0xD0, 0xE0, 0xF0};
+        for (int i = 0; i < sfrNames.length; i++) {
+            SFR_SYMBOLS.put(sfrNames[i], sfrAddresses[i]);
+        }
+
+        String[] bitNames = {"IT0", "IE0", "IT1", "IE1", "TR0", "TF0", "TR1", "TF1",
+                             "RI", "TI", "RB8", "TB8", "REN", "SM2", "SM1", "SM0",
+                             "EX0", "ET0", "EX1", "ET1", "ES", "EA",
+                             "PX0", "PT0", "PX1", "PT1", "PS",
+                             "P", "OV", "RS0", "RS1", "F0", "AC", "CY"};
+        int[] bitAddresses = {0x88, 0x89, 0x8A, 0x8B, 0x8C, 0x8D, 0x8E, 0x8F,
+                              0x98, 0x99, 0x9A, 0x9B, 0x9C, 0x9D, 0x9E, 0x9F,
+                              0xA8, 0xA9, 0xAA, 0xAB, 0xAC, 0xAF,
+                              0xB8, 0xB9, 0xBA, 0xBB, 0xBC,
+                              0xD0, 0xD2, 0xD3, 0xD4, 0xD5, 0xD6, 0xD7};
+        for (int i = 0; i < bitNames.length; i++) {
+            BIT_SYMBOLS.put(bitNames[i], bitAddresses[i]);
+        }
+    }
+
+    private final String sourceName;
+    private final Map<String, Integer> symbols = new HashMap<>();
+    private byte[] image = new byte[256];
+    private int imageLength;
+
+    private Assembler(String sourceName) {
+        this.sourceName = sourceName;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage: java Assembler program.asm [out.bin]");
+            System.exit(2);
+        }
+        try {
+            byte[] code = assembleFile(Paths.get(args[0]));
+            Path out = Paths.get(args.length == 2 ? args[1] : args[0].replaceAll("\\.[^./\\\\]*$", "") + ".bin");
+            Files.write(out, code);
+            System.err.println(code.length + " bytes written to " + out);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // assembles a source file, reusing the cached image when the same source was assembled before
+    static byte[] assembleFile(Path file) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        Path cached = cacheFile(content);
+        if (cached != null && Files.exists(cached)) {
+            return Files.readAllBytes(cached);
+        }
+        byte[] code = assemble(file.toString(), new String(content, StandardCharsets.ISO_8859_1));
+        if (cached != null) {
+            storeCache(cached, code);
+        }
+        return code;
+    }
+
+    // image starts at ROM address 0, gaps left by ORG are 0x00
+    static byte[] assemble(String sourceName, String source) {
+        Assembler assembler = new Assembler(sourceName);
+        List<String> lines = source.lines().toList();
+        assembler.pass(lines, false);
+        assembler.pass(lines, true);
+        byte[] code = new byte[assembler.imageLength];
+        System.arraycopy(assembler.image, 0, code, 0, assembler.imageLength);
+        return code;
+    }
+
+    // pass 1 (emit == false) only sizes instructions and collects labels
+    private void pass(List<String> lines, boolean emit) {
+        int address = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            try {
+                Statement statement = parse(lines.get(i));
+                if (statement == null) {
+                    continue;
+                }
+                if (statement.label != null && !emit) {
+                    define(statement.label, address);
+                }
+                if (statement.name == null) {
+                    continue;
+                }
+                switch (statement.name) {
+                    case "END":
+                        return;
+                    case "ORG":
+                        address = evaluate(one(statement), address, true);
+                        continue;
+                    case "EQU":
+                        if (!emit) {
+                            if (statement.label == null) {
+                                throw new IllegalArgumentException("EQU needs a name");
+                            }
+                            symbols.put(statement.label, evaluate(one(statement), address, true));
+                        }
+                        continue;
+                    case "DB":
+                        for (String operand : statement.operands) {
+                            if (operand.length() >= 2 && operand.startsWith("\"") && operand.endsWith("\"")) {
+                                for (int c = 1; c < operand.length() - 1; c++) {
+                                    put(emit, address++, operand.charAt(c));
+                                }
+                            } else {
+                                put(emit, address++, byteValue(evaluate(operand, address, emit)));
+                            }
+                        }
+                        continue;
+                    default:
+                        address = instruction(statement, address, emit);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(sourceName + ":" + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private int instruction(Statement statement, int address, boolean emit) {
+        List<Integer> candidates = OPCODES_BY_NAME.get(statement.name);
+        if (candidates == null) {
+            throw new IllegalArgumentException("Unknown instruction: " + statement.name);
+        }
+        String lastError = "Operands don't match any form of " + statement.name;
+        for (int opcode : candidates) {
+            String[] template = TEMPLATE_OPERANDS[opcode];
+            if (!shapeMatches(template, statement.operands)) {
+                continue;
+            }
+            int length = OpcodeTable.LENGTH[opcode];
+            if (!emit) {
+                return address + length; // every form with the same shape has the same length
+            }
+            int[] bytes = new int[length];
+            int count = 1;
+            bytes[0] = opcode;
+            boolean fits = true;
+            for (int k = 0; k < template.length && fits; k++) {
+                String kind = template[k];
+                String operand = statement.operands.get(k);
+                switch (kind) {
+                    case "#data":
+                        bytes[count++] = byteValue(evaluate(operand.substring(1), address, true));
+                        break;
+                    case "#data16": {
+                        int value = evaluate(operand.substring(1), address, true);
+                        bytes[count++] = (value >> 8) & 0xFF;
+                        bytes[count++] = value & 0xFF;
+                        break;
+                    }
+                    case "direct":
+                    case "bit":
+                        bytes[count++] = byteValue(evaluate(operand, address, true));
+                        break;
+                    case "rel": {
+                        int offset = evaluate(operand, address, true) - (address + length);
+                        if (offset < -128 || offset > 127) {
+                            throw new IllegalArgumentException("Jump target out of range: " + operand);
+                        }
+                        bytes[count++] = offset & 0xFF;
+                        break;
+                    }
+                    case "addr11": {
+                        int target = evaluate(operand, address, true);
+                        // page bits a10..a8 live in the opcode, only the matching opcode fits
+                        if ((target & 0xF800) != ((address + length) & 0xF800)) {
+                            throw new IllegalArgumentException("Target not in the same 2K block: " + operand);
+                        }
+                        fits = (opcode >> 5) == ((target >> 8) & 0x07);
+                        bytes[count++] = target & 0xFF;
+                        break;
+                    }
+                    case "addr16": {
+                        int value = evaluate(operand, address, true);
+                        bytes[count++] = (value >> 8) & 0xFF;
+                        bytes[count++] = value & 0xFF;
+                        break;
+                    }
+                    default:
+                        break; // literal operand (A, R0...), encoded in the opcode
+                }
+            }
+            if (!fits) {
+                continue;
+            }
+            if (opcode == 0x85) {
+                // MOV direct,direct stores the source address first
+                int destination = bytes[1];
+                bytes[1] = bytes[2];
+                bytes[2] = destination;
+            }
+            for (int k = 0; k < length; k++) {
+                put(true, address + k, bytes[k]);
+            }
+            return address + length;
+        }
+        throw new IllegalArgumentException(lastError);
+    }
+
+    private static boolean shapeMatches(String[] template, List<String> operands) {
+        if (template.length != operands.size()) {
+            return false;
+        }
+        for (int k = 0; k < template.length; k++) {
+            String kind = template[k];
+            String operand = operands.get(k);
+            boolean immediate = operand.startsWith("#");
+            switch (kind) {
+                case "#data":
+                case "#data16":
+                    if (!immediate) {
+                        return false;
+                    }
+                    break;
+                case "direct":
+                case "bit":
+                case "rel":
+                case "addr11":
+                case "addr16":
+                    if (immediate || isRegisterName(operand)) {
+                        return false;
+                    }
+                    break;
+                default:
+                    if (!kind.equalsIgnoreCase(operand)) {
+                        return false;
+                    }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isRegisterName(String operand) {
+        String upper = operand.toUpperCase(Locale.ROOT);
+        return upper.equals("A") || upper.equals("C") || upper.equals("AB") || upper.equals("DPTR")
+                || upper.startsWith("@") || upper.matches("R[0-7]");
+    }
+
+    // expressions: term (('+' | '-') term)*
+    private int evaluate(String expression, int address, boolean required) {
+        String text = expression.trim();
+        int total = 0;
+        int sign = 1;
+        int start = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean end = i == text.length();
+            char c = end ? 0 : text.charAt(i);
+            boolean inQuote = !end && i > start && text.charAt(start) == '\'' && i < start + 2;
+            if (end || (!inQuote && (c == '+' || (c == '-' && i > start)))) {
+                total += sign * term(text.substring(start, i).trim(), address, required);
+                sign = c == '-' ? -1 : 1;
+                start = i + 1;
+            }
+        }
+        return total;
+    }
+
+    private int term(String term, int address, boolean required) {
+        if (term.isEmpty()) {
+            throw new IllegalArgumentException("Missing value");
+        }
+        if (term.startsWith("-")) {
+            return -term(term.substring(1).trim(), address, required);
+        }
+        if (term.equals("$")) {
+            return address;
+        }
+        if (term.length() == 3 && term.charAt(0) == '\'' && term.charAt(2) == '\'') {
+            return term.charAt(1);
+        }
+        if (Character.isDigit(term.charAt(0))) {
+            return number(term);
+        }
+        String upper = term.toUpperCase(Locale.ROOT);
+        int dot = upper.indexOf('.');
+        if (dot > 0) {
+            // bit of a bit-addressable SFR, P1.0 / ACC.7
+            int base = term(upper.substring(0, dot), address, required);
+            int bit = number(upper.substring(dot + 1));
+            if (bit > 7 || base < 0x80 || (base & 0x07) != 0) {
+                throw new IllegalArgumentException("Not a bit address: " + term);
+            }
+            return base + bit;
+        }
+        Integer value = symbols.get(upper);
+        if (value == null) {
+            value = SFR_SYMBOLS.get(upper);
+        }
+        if (value == null) {
+            value = BIT_SYMBOLS.get(upper);
+        }
+        if (value == null) {
+            if (required) {
+                throw new IllegalArgumentException("Undefined symbol: " + term);
+            }
+            return 0; // forward reference in pass 1, the size doesn't depend on it
+        }
+        return value;
+    }
+
+    private static int number(String text) {
+        String t = text.toUpperCase(Locale.ROOT);
+        try {
+            if (t.startsWith("0X")) {
+                return Integer.parseInt(t.substring(2), 16);
+            }
+            if (t.startsWith("0B")) {
+                return Integer.parseInt(t.substring(2), 2);
+            }
+            if (t.endsWith("H")) {
+                return Integer.parseInt(t.substring(0, t.length() - 1), 16);
+            }
+            if (t.endsWith("B") && t.matches("[01]+B")) {
+                return Integer.parseInt(t.substring(0, t.length() - 1), 2);
+            }
+            return Integer.parseInt(t);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad number: " + text);
+        }
+    }
+
+    private static int byteValue(int value) {
+        if (value < -128 || value > 255) {
+            throw new IllegalArgumentException("Value does not fit in a byte: " + value);
+        }
+        return value & 0xFF;
+    }
+
+    private void define(String label, int address) {
+        if (symbols.containsKey(label)) {
+            throw new IllegalArgumentException("Duplicate label: " + label);
+        }
+        symbols.put(label, address);
+    }
+
+    private void put(boolean emit, int address, int value) {
+        if (!emit) {
+            return;
+        }
+        if (address < 0 || address > 0xFFFF) {
+            throw new IllegalArgumentException("Address out of range: " + address);
+        }
+        if (address >= image.length) {
+            byte[] bigger = new byte[Math.max(address + 1, image.length * 2)];
+            System.arraycopy(image, 0, bigger, 0, imageLength);
+            image = bigger;
+        }
+        image[address] = (byte) value;
+        imageLength = Math.max(imageLength, address + 1);
+    }
+
+    private static String one(Statement statement) {
+        if (statement.operands.size() != 1) {
+            throw new IllegalArgumentException(statement.name + " takes one operand");
+        }
+        return statement.operands.get(0);
+    }
+
+    // one source line split into label, upper-case name and operands
+    private static final class Statement {
+        String label;
+        String name;
+        List<String> operands = new ArrayList<>();
+    }
+
+    private static Statement parse(String raw) {
+        String line = stripComment(raw).trim();
+        if (line.isEmpty()) {
+            return null;
+        }
+        Statement statement = new Statement();
+        int colon = line.indexOf(':');
+        if (colon > 0 && line.substring(0, colon).trim().matches("[A-Za-z_][A-Za-z0-9_]*")) {
+            statement.label = line.substring(0, colon).trim().toUpperCase(Locale.ROOT);
+            line = line.substring(colon + 1).trim();
+        }
+        if (line.isEmpty()) {
+            return statement;
+        }
+        String[] words = line.split("\\s+", 2);
+        String rest = words.length > 1 ? words[1].trim() : "";
+        // NAME EQU value
+        if (rest.toUpperCase(Locale.ROOT).startsWith("EQU ") && statement.label == null) {
+            statement.label = words[0].toUpperCase(Locale.ROOT);
+            statement.name = "EQU";
+            statement.operands.add(rest.substring(4).trim());
+            return statement;
+        }
+        statement.name = words[0].toUpperCase(Locale.ROOT);
+        if (!rest.isEmpty()) {
+            StringBuilder current = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < rest.length(); i++) {
+                char c = rest.charAt(i);
+                if (c == '"' || c == '\'') {
+                    quoted = !quoted;
+                }
+                if (c == ',' && !quoted) {
+                    statement.operands.add(current.toString().trim());
+                    current.setLength(0);
+                } else {
+                    current.append(c);
+                }
+            }
+            statement.operands.add(current.toString().trim());
+        }
+        return statement;
+    }
+
+    private static String stripComment(String line) {
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"' || c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && (c == ';' || (c == '/' && i + 1 < line.length() && line.charAt(i + 1) == '/'))) {
+                return line.substring(0, i);
+            }
+        }
+        return line;
+    }
+
+    // key covers the source and the opcode table, so new or changed opcodes never hit a stale image
+    private static Path cacheFile(byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(CACHE_VERSION.getBytes(StandardCharsets.US_ASCII));
+            for (int opcode = 0; opcode < 256; opcode++) {
+                digest.update((byte) OpcodeTable.LENGTH[opcode]);
+                digest.update(String.valueOf(OpcodeTable.MNEMONIC[opcode]).getBytes(StandardCharsets.US_ASCII));
+            }
+            byte[] hash = digest.digest(content);
+            StringBuilder name = new StringBuilder();
+            for (byte b : hash) {
+                name.append(String.format("%02x", b));
+            }
+            return Paths.get(System.getProperty("sim.cache.dir", ".simcache"), name + ".asm.bin");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    private static void storeCache(Path cached, byte[] code) {
+        try {
+            Files.createDirectories(cached.getParent());
+            Path temp = Files.createTempFile(cached.getParent(), "asm", ".tmp");
+            Files.write(temp, code);
+            Files.move(temp, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("Could not cache assembled program: " + e.getMessage());
+        }
+    }
+}
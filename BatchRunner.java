@@ -0,0 +1,250 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// headless entry point, never loads AWT/Swing
+//   java BatchRunner [options] program...
+//     --netlist <file>      peripherals to wire up (see Netlist)
+//     --max-cycles <n>      stop after n machine cycles (default 1000000)
+//     --clock free|realtime free-run at full speed or pace to the crystal (default free)
+//     --crystal <hz>        crystal frequency (default 12000000, 1 machine cycle = 12 clocks)
+//     --format text|json    report format (default text)
+//     --out <file>          write the report to a file instead of stdout
+//     --engine <mode>       REFERENCE, TABLE, DECODED or TRANSLATED (default TABLE)
+//     --save-snapshots <dir> write each program's final machine state to dir/<program>.snap
+//     --vcd <dir>           write a VCD waveform of the ports per program into dir
+//     --coverage <dir>      write each program's ROM coverage to dir/<program>.cov and .lst, plus
+//                           merged.cov/merged.lst over all programs (listed against the first ROM)
+//     --profile             add the hottest addresses and opcodes by machine cycles to the report
+//     --jobs <n>            programs simulated in parallel (default: number of cores)
+// program files may be .bin, Intel HEX (.hex/.ihx), assembly (.asm/.a51) or one-opcode-per-line
+// text (see ProgramLoader), or a .snap machine snapshot, which continues from the saved state
+// each program file runs on a fresh machine, the report holds one entry per program
+public class BatchRunner {
+    public static void main(String[] args) {
+        String netlistFile = null;
+        long maxCycles = 1_000_000;
+        String format = "text";
+        String outFile = null;
+        ExecutionMode engine = ExecutionMode.TABLE;
+        ClockMode clock = ClockMode.FREE_RUN;
+        long crystalHz = CPU.DEFAULT_CRYSTAL_HZ;
+        String vcdDir = null;
+        String snapshotDir = null;
+        boolean profile = false;
+        String coverageDir = null;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        List<String> programs = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--netlist":
+                        netlistFile = value(args, ++i);
+                        break;
+                    case "--max-cycles":
+                        maxCycles = Long.parseLong(value(args, ++i));
+                        break;
+                    case "--format":
+                        format = value(args, ++i).toLowerCase();
+                        if (!format.equals("text") && !format.equals("json")) {
+                            throw new IllegalArgumentException("Unknown format: " + format);
+                        }
+                        break;
+                    case "--out":
+                        outFile = value(args, ++i);
+                        break;
+                    case "--engine":
+                        engine = ExecutionMode.valueOf(value(args, ++i).toUpperCase());
+                        break;
+                    case "--clock":
+                        String mode = value(args, ++i).toLowerCase();
+                        if (mode.equals("free")) {
+                            clock = ClockMode.FREE_RUN;
+                        } else if (mode.equals("realtime")) {
+                            clock = ClockMode.REAL_TIME;
+                        } else {
+                            throw new IllegalArgumentException("Unknown clock mode: " + mode);
+                        }
+                        break;
+                    case "--crystal":
+                        crystalHz = Long.parseLong(value(args, ++i));
+                        if (crystalHz <= 0) {
+                            throw new IllegalArgumentException("Crystal frequency must be positive");
+                        }
+                        break;
+                    case "--vcd":
+                        vcdDir = value(args, ++i);
+                        break;
+                    case "--save-snapshots":
+                        snapshotDir = value(args, ++i);
+                        break;
+                    case "--coverage":
+                        coverageDir = value(args, ++i);
+                        break;
+                    case "--profile":
+                        profile = true;
+                        break;
+                    case "--jobs":
+                        jobs = Integer.parseInt(value(args, ++i));
+                        if (jobs < 1) {
+                            throw new IllegalArgumentException("Jobs must be at least 1");
+                        }
+                        break;
+                    default:
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option: " + args[i]);
+                        }
+                        programs.add(args[i]);
+                }
+            }
+            if (programs.isEmpty()) {
+                throw new IllegalArgumentException("No program files given");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: java BatchRunner [--netlist file] [--max-cycles n] [--format text|json] [--out file] [--engine mode] [--clock free|realtime] [--crystal hz] [--vcd dir] [--save-snapshots dir] [--profile] [--coverage dir] [--jobs n] program...");
+            System.exit(2);
+            return;
+        }
+
+        // simulator chatter goes to stderr so stdout only carries the report
+        PrintStream report = System.out;
+        System.setOut(System.err);
+
+        List<SimulationPool.Result> results;
+        try (SimulationPool pool = new SimulationPool(jobs)) {
+            List<SimulationPool.Job> submitted = new ArrayList<>();
+            for (String program : programs) {
+                submitted.add(pool.submit(program, maxCycles, setup(program, netlistFile, engine, clock, crystalHz, vcdDir, profile, coverageDir != null)));
+            }
+            results = SimulationPool.awaitAll(submitted);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+            return;
+        }
+
+        for (SimulationPool.Result result : results) {
+            try {
+                result.machine.stopVcd();
+            } catch (IOException e) {
+                System.err.println("Error writing VCD for " + result.name + ": " + e.getMessage());
+            }
+            if (snapshotDir != null) {
+                try {
+                    Path dir = Paths.get(snapshotDir);
+                    Files.createDirectories(dir);
+                    result.machine.snapshot().save(dir.resolve(Paths.get(result.name).getFileName() + ".snap"));
+                } catch (IOException e) {
+                    System.err.println("Error writing snapshot for " + result.name + ": " + e.getMessage());
+                }
+            }
+        }
+
+        if (coverageDir != null) {
+            try {
+                writeCoverage(Paths.get(coverageDir), results);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Error writing coverage: " + e.getMessage());
+            }
+        }
+
+        StringBuilder output = new StringBuilder();
+        boolean json = format.equals("json");
+        boolean failed = false;
+        if (json) {
+            output.append('[');
+        }
+        for (SimulationPool.Result result : results) {
+            failed |= result.reason == Machine.StopReason.ERROR;
+            if (json) {
+                output.append(output.length() > 1 ? "," : "").append(StateReport.json(result.name, result.machine, result.reason, result.error));
+            } else {
+                output.append(StateReport.text(result.name, result.machine, result.reason, result.error)).append('\n');
+            }
+        }
+        if (json) {
+            output.append("]\n");
+        }
+
+        try {
+            if (outFile != null) {
+                Files.writeString(Path.of(outFile), output);
+            } else {
+                report.print(output);
+                report.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing report: " + e.getMessage());
+            System.exit(1);
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static SimulationPool.MachineSetup setup(String program, String netlistFile, ExecutionMode engine,
+                                                     ClockMode clock, long crystalHz, String vcdDir,
+                                                     boolean profile, boolean coverage) {
+        return machine -> {
+            machine.getCpu().setExecutionMode(engine);
+            machine.getCpu().setCrystalFrequency(crystalHz);
+            machine.setClockMode(clock);
+            if (netlistFile != null) {
+                machine.setNetlist(Netlist.load(Paths.get(netlistFile), machine.getPins()));
+            }
+            if (program.toLowerCase().endsWith(".snap")) {
+                machine.restore(MachineSnapshot.load(Paths.get(program)));
+            } else {
+                ProgramLoader.load(machine.getMemory(), program);
+            }
+            if (vcdDir != null) {
+                Path dir = Paths.get(vcdDir);
+                Files.createDirectories(dir);
+                machine.recordVcd(dir.resolve(Paths.get(program).getFileName() + ".vcd"));
+            }
+            if (profile) {
+                machine.enableProfiler();
+            }
+            if (coverage) {
+                machine.enableCoverage();
+            }
+        };
+    }
+
+    // runs of different ROM sizes cannot merge, the merged files are then left out
+    private static void writeCoverage(Path dir, List<SimulationPool.Result> results) throws IOException {
+        Files.createDirectories(dir);
+        Coverage merged = null;
+        Memory listed = null;
+        for (SimulationPool.Result result : results) {
+            Coverage coverage = result.machine.getCoverage();
+            if (coverage == null) {
+                continue; // setup failed before coverage was enabled
+            }
+            String name = Paths.get(result.name).getFileName().toString();
+            coverage.save(dir.resolve(name + ".cov"));
+            Files.writeString(dir.resolve(name + ".lst"), coverage.listing(result.machine.getMemory()));
+            if (merged == null) {
+                merged = coverage.copy();
+                listed = result.machine.getMemory();
+            } else {
+                merged.merge(coverage);
+            }
+        }
+        if (merged != null) {
+            merged.save(dir.resolve("merged.cov"));
+            Files.writeString(dir.resolve("merged.lst"), merged.listing(listed));
+        }
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+        }
+        return args[i];
+    }
+}
@@ -0,0 +1,235 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+// workloads for the JMH suite in bench/SimulatorBenchmarks.java (mvn package, then
+// java -jar target/benchmarks.jar -rf json): the interpreter per opcode family and per program in
+// sample_programs.txt for every execution engine, the program loader and peripheral evaluation.
+// JMH does not accept benchmarks in the default package, so the suite looks these factories up by
+// name. each supplier is one invocation of the measured code and returns a value depending on
+// the work done; the program workloads return the instructions executed.
+public class Benchmark {
+
+    private Benchmark() {
+    }
+
+    // family as in familyProgram, engine an ExecutionMode name
+    public static LongSupplier opcodeFamily(String family, String engine) {
+        return programWorkload(familyProgram(family), ExecutionMode.valueOf(engine));
+    }
+
+    // program is a section name of sample_programs.txt as sampleName() makes it
+    public static LongSupplier sampleProgram(String program, String engine) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<byte[]> images = new ArrayList<>();
+        readSamplePrograms(Paths.get("sample_programs.txt"), names, images);
+        int index = names.indexOf(program);
+        if (index < 0) {
+            throw new IllegalArgumentException("No sample program " + program + " in sample_programs.txt, have " + names);
+        }
+        return programWorkload(images.get(index), ExecutionMode.valueOf(engine));
+    }
+
+    // the text loader on a listing of the first sample program
+    public static LongSupplier loader() throws IOException {
+        List<String> names = new ArrayList<>();
+        List<byte[]> images = new ArrayList<>();
+        readSamplePrograms(Paths.get("sample_programs.txt"), names, images);
+        byte[] image = images.isEmpty() ? familyProgram("mov") : images.get(0);
+        Path hexFile = Files.createTempFile("bench", ".txt");
+        hexFile.toFile().deleteOnExit();
+        Files.writeString(hexFile, toHexListing(image));
+        Memory memory = new Memory(4096, 128);
+        return () -> {
+            try {
+                ProgramLoader.loadOpcodesFromFile(memory, hexFile.toString());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return memory.readByte(image.length - 1);
+        };
+    }
+
+    // one invocation runs the program from address 0 to its closing SJMP $
+    private static LongSupplier programWorkload(byte[] image, ExecutionMode engine) {
+        Machine machine = new Machine();
+        CPU cpu = machine.getCpu();
+        cpu.setExecutionMode(engine);
+        for (int i = 0; i < image.length; i++) {
+            machine.getMemory().writeByte(i, image[i]);
+        }
+        return () -> {
+            long before = cpu.getInstructionCount();
+            cpu.setProgramCounter(0);
+            machine.run(Long.MAX_VALUE);
+            return cpu.getInstructionCount() - before;
+        };
+    }
+
+    // a straight run of one opcode family, every register variant, ending in SJMP $
+    static byte[] familyProgram(String family) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int repeat = 0; repeat < 4; repeat++) {
+            switch (family) {
+                case "mov":
+                    for (int r = 0; r < 8; r++) {
+                        emit(out, 0x74, 0x10 + r);   // MOV A,#data
+                        emit(out, 0x78 + r, r);      // MOV Rn,#data
+                        emit(out, 0xE8 + r);         // MOV A,Rn
+                        emit(out, 0xF8 + r);         // MOV Rn,A
+                    }
+                    break;
+                case "add_subb":
+                    for (int r = 0; r < 8; r++) {
+                        emit(out, 0x24, 0x35);       // ADD A,#data
+                        emit(out, 0x28 + r);         // ADD A,Rn
+                        emit(out, 0x94, 0x17);       // SUBB A,#data
+                        emit(out, 0x98 + r);         // SUBB A,Rn
+                    }
+                    break;
+                case "logic":
+                    for (int r = 0; r < 8; r++) {
+                        emit(out, 0x44, 0x0F);       // ORL A,#data
+                        emit(out, 0x48 + r);         // ORL A,Rn
+                        emit(out, 0x54, 0xF3);       // ANL A,#data
+                        emit(out, 0x58 + r);         // ANL A,Rn
+                        emit(out, 0x62, 0x5A);       // XRL A,#data
+                        emit(out, 0x68 + r);         // XRL A,Rn
+                    }
+                    break;
+                case "inc_dec":
+                    for (int r = 0; r < 8; r++) {
+                        emit(out, 0x04);             // INC A
+                        emit(out, 0x08 + r);         // INC Rn
+                        emit(out, 0x14);             // DEC A
+                        emit(out, 0x18 + r);         // DEC Rn
+                    }
+                    break;
+                case "setb":
+                    for (int bit = 0; bit < 8; bit++) {
+                        emit(out, 0xD2, 0x80 + bit); // SETB P0.x
+                        emit(out, 0xD2, 0x90 + bit); // SETB P1.x
+                        emit(out, 0xD2, 0xA0 + bit); // SETB P2.x
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown family: " + family);
+            }
+        }
+        emit(out, 0x80, 0xFE);               // SJMP $
+        return out.toByteArray();
+    }
+
+    private static void emit(ByteArrayOutputStream out, int... bytes) {
+        for (int b : bytes) {
+            out.write(b);
+        }
+    }
+
+    // toggles one of four port pins and evaluates LEDs, resistors, transistors and 7-segment displays
+    public static LongSupplier peripherals() {
+        Machine machine = new Machine();
+        Pins pins = machine.getPins();
+        Netlist netlist = machine.getNetlist();
+        for (int bit = 0; bit < 8; bit++) {
+            LED led = new LED("red");
+            led.connect(pins.getPin("p1_" + bit), pins.getPin("p0_" + bit));
+            netlist.leds.add(led);
+        }
+        for (int i = 0; i < 4; i++) {
+            Resistor resistor = new Resistor(1000 * (i + 1));
+            resistor.connect(pins.getPin("p2_" + i), pins.getPin("p2_" + (i + 4)));
+            netlist.resistors.add(resistor);
+        }
+        for (int i = 0; i < 2; i++) {
+            npn n = new npn(i + 1);
+            n.connect(pins.getPin("p3_" + i), pins.getPin("p3_" + (i + 2)), pins.getPin("p3_" + (i + 4)));
+            netlist.npnTransistors.add(n);
+            pnp p = new pnp(i + 1);
+            p.connect(pins.getPin("p3_" + (i + 4)), pins.getPin("p3_" + (i + 6)), pins.getPin("p3_" + i));
+            netlist.pnpTransistors.add(p);
+        }
+        for (int i = 0; i < 2; i++) {
+            seven_seg_display ssd = new seven_seg_display(i + 1);
+            Pin[] ssdPins = new Pin[8];
+            for (int bit = 0; bit < 8; bit++) {
+                ssdPins[bit] = pins.getPin("p" + (i + 1) + "_" + bit);
+            }
+            ssd.connect(ssdPins);
+            netlist.sevenSegDisplays.add(ssd);
+        }
+        Pin[] toggled = {pins.getPin("p1_0"), pins.getPin("p1_3"), pins.getPin("p2_5"), pins.getPin("p3_1")};
+        int[] step = new int[1];
+
+        return () -> {
+            Pin pin = toggled[step[0]++ & 3];
+            if (pin.isHigh()) {
+                pin.setLow();
+            } else {
+                pin.setHigh();
+            }
+            long h = 0;
+            for (LED led : netlist.leds) {
+                h += led.checkState().length();
+            }
+            for (Resistor resistor : netlist.resistors) {
+                h += resistor.checkVoltageDrop().length();
+            }
+            for (npn n : netlist.npnTransistors) {
+                h += n.checkVoltage().length();
+            }
+            for (pnp p : netlist.pnpTransistors) {
+                h += p.checkVoltage().length();
+            }
+            for (seven_seg_display ssd : netlist.sevenSegDisplays) {
+                h += ssd.run_ssd()[1].length();
+            }
+            return h;
+        };
+    }
+
+    // sample_programs.txt: sections start with a // header line, the hex bytes (0x..) of each
+    // section are the program, everything else in the section is commentary
+    static void readSamplePrograms(Path file, List<String> names, List<byte[]> images) throws IOException {
+        String name = null;
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        for (String raw : Files.readAllLines(file)) {
+            String line = raw.trim();
+            if (line.startsWith("//")) {
+                addSample(names, images, name, image);
+                name = line.substring(2).trim().replaceAll("[^A-Za-z0-9]+", "_").replaceAll("^_|_$", "").toLowerCase();
+                image = new ByteArrayOutputStream();
+            } else if (line.matches("0[xX][0-9a-fA-F]{1,2}")) {
+                image.write(Integer.parseInt(line.substring(2), 16));
+            }
+        }
+        addSample(names, images, name, image);
+    }
+
+    private static void addSample(List<String> names, List<byte[]> images, String name, ByteArrayOutputStream image) {
+        if (name != null && image.size() > 0) {
+            byte[] bytes = image.toByteArray();
+            if (bytes.length < 2 || (bytes[bytes.length - 2] & 0xFF) != 0x80 || (bytes[bytes.length - 1] & 0xFF) != 0xFE) {
+                image.write(0x80); // SJMP $ ends the run
+                image.write(0xFE);
+                bytes = image.toByteArray();
+            }
+            names.add(name);
+            images.add(bytes);
+        }
+    }
+
+    private static String toHexListing(byte[] image) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : image) {
+            sb.append(String.format("0x%02X%n", b & 0xFF));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,410 @@
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+
+// translating execution mode (ExecutionMode.TRANSLATED)
+// straight-line runs of code memory are compiled once into a hidden class whose execute() is the
+// block unrolled as JVM bytecode: the PC, cycle counts, opcodes and operands are constants and
+// every instruction has a call site of its own, so the JIT sees one handler per site and can
+// inline it. blocks are cached by start PC. a block ends after a jump, call or RET
+// (OpcodeTable.ENDS_BLOCK), conditional branches leave it early when taken. writes to code
+// memory drop every block that covers the written bytes, its class is unloaded with it.
+class BlockTranslator implements CodeWriteListener {
+    static final int MAX_BLOCK_INSTRUCTIONS = 32;
+    private static final int MAX_BLOCK_BYTES = MAX_BLOCK_INSTRUCTIONS * 3;
+
+    private final CPU cpu;
+    private final Memory memory;
+    private final InstructionSet instructionSet;
+    private final CompiledBlock[] blocks; // indexed by start PC
+
+    public BlockTranslator(CPU cpu, Memory memory, InstructionSet instructionSet) {
+        this.cpu = cpu;
+        this.memory = memory;
+        this.instructionSet = instructionSet;
+        this.blocks = new CompiledBlock[memory.getCodeSize()];
+        memory.addCodeWriteListener(this);
+    }
+
+    // runs the block starting at pc, returns the number of instructions executed
+    // (0 if nothing could be translated there, the caller then steps and gets the fetch error)
+    public int run(int pc) {
+        if (pc >= blocks.length) {
+            return 0;
+        }
+        CompiledBlock block = blocks[pc];
+        if (block == null) {
+            block = translate(pc);
+            if (block == null) {
+                return 0;
+            }
+            blocks[pc] = block;
+        }
+        int executed = block.execute(cpu, cpu.getScheduler());
+        Profiler profiler = cpu.getProfiler();
+        if (profiler != null) {
+            profiler.recordBlock(block.start, block.nextPc, block.opcodes, block.cycles, executed);
+        }
+        Coverage coverage = cpu.getCoverage();
+        if (coverage != null && block.coveredBy != coverage) {
+            coverage.markRange(block.start, block.nextPc[executed - 1]);
+            if (executed == block.handlers.length) {
+                block.coveredBy = coverage; // only a complete pass covers every byte
+            }
+        }
+        return executed;
+    }
+
+    private CompiledBlock translate(int start) {
+        int codeSize = memory.getCodeSize();
+        int[] opcodes = new int[MAX_BLOCK_INSTRUCTIONS];
+        int[] operand1 = new int[MAX_BLOCK_INSTRUCTIONS];
+        int[] operand2 = new int[MAX_BLOCK_INSTRUCTIONS];
+        int[] nextPc = new int[MAX_BLOCK_INSTRUCTIONS];
+        int[] cycles = new int[MAX_BLOCK_INSTRUCTIONS];
+        int count = 0;
+        int pc = start;
+
+        while (count < MAX_BLOCK_INSTRUCTIONS && pc < codeSize) {
+            int opcode = memory.fetchByte(pc);
+            if (!OpcodeTable.isDefined(opcode)) {
+                break;
+            }
+            int length = OpcodeTable.LENGTH[opcode];
+            if (pc + length > codeSize) {
+                break;
+            }
+            opcodes[count] = opcode;
+            operand1[count] = length > 1 ? memory.fetchByte(pc + 1) : 0;
+            operand2[count] = length > 2 ? memory.fetchByte(pc + 2) : 0;
+            pc += length;
+            nextPc[count] = pc;
+            cycles[count] = OpcodeTable.CYCLES[opcode];
+            count++;
+            if (OpcodeTable.ENDS_BLOCK[opcode]) {
+                break;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+
+        OpcodeHandler[] handlers = new OpcodeHandler[count];
+        for (int i = 0; i < count; i++) {
+            handlers[i] = instructionSet.handlerFor(opcodes[i]);
+        }
+        return BlockCompiler.compile(start, pc, handlers,
+                Arrays.copyOf(opcodes, count),
+                Arrays.copyOf(operand1, count),
+                Arrays.copyOf(operand2, count),
+                Arrays.copyOf(nextPc, count),
+                Arrays.copyOf(cycles, count));
+    }
+
+    @Override
+    public void codeWritten(int from, int to) {
+        // a block is at most MAX_BLOCK_BYTES long, so only starts in that window can overlap
+        for (int start = Math.max(0, from - MAX_BLOCK_BYTES + 1); start < to && start < blocks.length; start++) {
+            CompiledBlock block = blocks[start];
+            if (block != null && block.end > from) {
+                block.valid = false;
+                blocks[start] = null;
+            }
+        }
+    }
+
+    // what the profiler and coverage need to know about a block, execute() is generated
+    abstract static class CompiledBlock {
+        final int start;
+        final int end; // exclusive
+        final OpcodeHandler[] handlers;
+        final int[] opcodes;
+        final int[] operand1;
+        final int[] operand2;
+        final int[] nextPc;
+        final int[] cycles;
+        boolean valid = true;
+        Coverage coveredBy; // the coverage that already has this whole block
+
+        CompiledBlock(int start, int end, OpcodeHandler[] handlers, int[] opcodes,
+                      int[] operand1, int[] operand2, int[] nextPc, int[] cycles) {
+            this.start = start;
+            this.end = end;
+            this.handlers = handlers;
+            this.opcodes = opcodes;
+            this.operand1 = operand1;
+            this.operand2 = operand2;
+            this.nextPc = nextPc;
+            this.cycles = cycles;
+        }
+
+        // runs the block, returns how many of its instructions ran
+        abstract int execute(CPU cpu, EventScheduler events);
+    }
+
+    // writes the class file of one block and defines it as a hidden class next to this one.
+    // for instruction i the generated execute() does
+    //     cpu.setProgramCounter(NEXT_PC);
+    //     cpu.addMachineCycles(CYCLES);        charged first, like the other engines
+    //     handlers[i].execute(OPCODE, OPERAND1, OPERAND2);
+    //     if (!valid || cpu.getProgramCounter() != NEXT_PC || cpu.getMachineCycles() >= events.nextDue()
+    //             || cpu.hasInterruptRequests()) return i + 1;
+    // the last instruction returns the block length without checking. the class file is version
+    // 49 so the verifier infers the frames itself and no StackMapTable has to be written.
+    private static final class BlockCompiler {
+        private static final String NAME = "BlockTranslator$Block";
+        private static final String BASE = "BlockTranslator$CompiledBlock";
+        private static final String HANDLER = "OpcodeHandler";
+        private static final String CONSTRUCTOR = "(II[LOpcodeHandler;[I[I[I[I[I)V";
+        private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(void.class, int.class, int.class,
+                OpcodeHandler[].class, int[].class, int[].class, int[].class, int[].class, int[].class);
+
+        // the opcodes used
+        private static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13;
+        private static final int ILOAD = 0x15, ALOAD = 0x19, ALOAD_0 = 0x2A, ALOAD_1 = 0x2B, ALOAD_2 = 0x2C;
+        private static final int AALOAD = 0x32, I2L = 0x85, LCMP = 0x94;
+        private static final int IFEQ = 0x99, IFNE = 0x9A, IFGE = 0x9C, IF_ICMPNE = 0xA0, GOTO = 0xA7;
+        private static final int IRETURN = 0xAC, RETURN = 0xB1, GETFIELD = 0xB4;
+        private static final int INVOKEVIRTUAL = 0xB6, INVOKESPECIAL = 0xB7, INVOKEINTERFACE = 0xB9;
+
+        private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int poolCount = 1;
+        private ByteArrayOutputStream code;
+
+        static CompiledBlock compile(int start, int end, OpcodeHandler[] handlers, int[] opcodes,
+                                     int[] operand1, int[] operand2, int[] nextPc, int[] cycles) {
+            byte[] classFile = new BlockCompiler().write(opcodes, operand1, operand2, nextPc, cycles);
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+                MethodHandle constructor = lookup.findConstructor(lookup.lookupClass(), CONSTRUCTOR_TYPE);
+                return (CompiledBlock) constructor.invoke(start, end, handlers, opcodes, operand1, operand2, nextPc, cycles);
+            } catch (Throwable e) {
+                throw new IllegalStateException(String.format("Cannot compile the block at 0x%04X", start), e);
+            }
+        }
+
+        private byte[] write(int[] opcodes, int[] operand1, int[] operand2, int[] nextPc, int[] cycles) {
+            int thisClass = classEntry(NAME);
+            int superClass = classEntry(BASE);
+
+            // BlockTranslator$Block(...) { super(...); }
+            code = new ByteArrayOutputStream();
+            code.write(ALOAD_0);
+            code.write(ILOAD);
+            code.write(1);
+            code.write(ILOAD);
+            code.write(2);
+            for (int local = 3; local <= 8; local++) {
+                code.write(ALOAD);
+                code.write(local);
+            }
+            code.write(INVOKESPECIAL);
+            u2(code, memberEntry(10, BASE, "<init>", CONSTRUCTOR));
+            code.write(RETURN);
+            byte[] constructor = method(0x0001, "<init>", CONSTRUCTOR, 9, 9, code.toByteArray());
+
+            code = new ByteArrayOutputStream();
+            List<int[]> exits = new ArrayList<>(); // branch position, exit position
+            int count = opcodes.length;
+            for (int i = 0; i < count; i++) {
+                code.write(ALOAD_1);
+                pushInt(nextPc[i]);
+                invoke(INVOKEVIRTUAL, "CPU", "setProgramCounter", "(I)V");
+                code.write(ALOAD_1);
+                pushInt(cycles[i]);
+                code.write(I2L);
+                invoke(INVOKEVIRTUAL, "CPU", "addMachineCycles", "(J)V");
+                code.write(ALOAD_0);
+                code.write(GETFIELD);
+                u2(code, memberEntry(9, BASE, "handlers", "[L" + HANDLER + ";"));
+                pushInt(i);
+                code.write(AALOAD);
+                pushInt(opcodes[i]);
+                pushInt(operand1[i]);
+                pushInt(operand2[i]);
+                code.write(INVOKEINTERFACE);
+                u2(code, memberEntry(11, HANDLER, "execute", "(III)V"));
+                code.write(4); // argument slots, receiver included
+                code.write(0);
+                if (i == count - 1) {
+                    break;
+                }
+
+                int first = exits.size();
+                code.write(ALOAD_0);
+                code.write(GETFIELD);
+                u2(code, memberEntry(9, BASE, "valid", "Z"));
+                exits.add(new int[] {branch(IFEQ), 0});
+                code.write(ALOAD_1);
+                invoke(INVOKEVIRTUAL, "CPU", "getProgramCounter", "()I");
+                pushInt(nextPc[i]);
+                exits.add(new int[] {branch(IF_ICMPNE), 0});
+                code.write(ALOAD_1);
+                invoke(INVOKEVIRTUAL, "CPU", "getMachineCycles", "()J");
+                code.write(ALOAD_2);
+                invoke(INVOKEVIRTUAL, "EventScheduler", "nextDue", "()J");
+                code.write(LCMP);
+                exits.add(new int[] {branch(IFGE), 0});
+                code.write(ALOAD_1);
+                invoke(INVOKEVIRTUAL, "CPU", "hasInterruptRequests", "()Z");
+                exits.add(new int[] {branch(IFNE), 0});
+                code.write(GOTO);
+                u2(code, 3 + 3); // over the exit below: bipush n, ireturn
+                for (int e = first; e < exits.size(); e++) {
+                    exits.get(e)[1] = code.size();
+                }
+                code.write(BIPUSH);
+                code.write(i + 1);
+                code.write(IRETURN);
+            }
+            pushInt(count);
+            code.write(IRETURN);
+            byte[] body = code.toByteArray();
+            for (int[] exit : exits) {
+                int offset = exit[1] - exit[0];
+                body[exit[0] + 1] = (byte) (offset >>> 8);
+                body[exit[0] + 2] = (byte) offset;
+            }
+            // deepest point: two longs for lcmp, or the handler and its three ints
+            byte[] execute = method(0x0000, "execute", "(LCPU;LEventScheduler;)I", 4, 3, body);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            u4(out, 0xCAFEBABE);
+            u2(out, 0);  // minor
+            u2(out, 49); // major, Java 5
+            u2(out, poolCount);
+            out.write(pool.toByteArray(), 0, pool.size());
+            u2(out, 0x0030); // ACC_FINAL | ACC_SUPER, package private
+            u2(out, thisClass);
+            u2(out, superClass);
+            u2(out, 0); // interfaces
+            u2(out, 0); // fields
+            u2(out, 2); // methods
+            out.write(constructor, 0, constructor.length);
+            out.write(execute, 0, execute.length);
+            u2(out, 0); // attributes
+            return out.toByteArray();
+        }
+
+        private byte[] method(int access, String name, String descriptor, int maxStack, int maxLocals, byte[] body) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            u2(out, access);
+            u2(out, utf8(name));
+            u2(out, utf8(descriptor));
+            u2(out, 1); // attributes: Code
+            u2(out, utf8("Code"));
+            u4(out, 12 + body.length);
+            u2(out, maxStack);
+            u2(out, maxLocals);
+            u4(out, body.length);
+            out.write(body, 0, body.length);
+            u2(out, 0); // exception table
+            u2(out, 0); // attributes
+            return out.toByteArray();
+        }
+
+        // a branch whose offset is patched later, returns where its opcode is
+        private int branch(int opcode) {
+            int at = code.size();
+            code.write(opcode);
+            u2(code, 0);
+            return at;
+        }
+
+        private void invoke(int opcode, String owner, String name, String descriptor) {
+            code.write(opcode);
+            u2(code, memberEntry(10, owner, name, descriptor));
+        }
+
+        private void pushInt(int value) {
+            if (value >= 0 && value <= 5) {
+                code.write(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                code.write(BIPUSH);
+                code.write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                code.write(SIPUSH);
+                u2(code, value);
+            } else {
+                code.write(LDC_W);
+                u2(code, integerEntry(value));
+            }
+        }
+
+        // constant pool, each entry written once
+        private int utf8(String value) {
+            Integer index = entries.get("U" + value);
+            if (index != null) {
+                return index;
+            }
+            pool.write(1);
+            u2(pool, value.length()); // the names used are plain ASCII
+            for (int i = 0; i < value.length(); i++) {
+                pool.write(value.charAt(i));
+            }
+            return add("U" + value);
+        }
+
+        private int integerEntry(int value) {
+            Integer index = entries.get("I" + value);
+            if (index != null) {
+                return index;
+            }
+            pool.write(3);
+            u4(pool, value);
+            return add("I" + value);
+        }
+
+        private int classEntry(String name) {
+            Integer index = entries.get("C" + name);
+            if (index != null) {
+                return index;
+            }
+            int nameIndex = utf8(name);
+            pool.write(7);
+            u2(pool, nameIndex);
+            return add("C" + name);
+        }
+
+        // tag 9 field, 10 method, 11 interface method
+        private int memberEntry(int tag, String owner, String name, String descriptor) {
+            String key = tag + owner + "." + name + descriptor;
+            Integer index = entries.get(key);
+            if (index != null) {
+                return index;
+            }
+            int ownerIndex = classEntry(owner);
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            Integer nameAndType = entries.get("N" + name + descriptor);
+            if (nameAndType == null) {
+                pool.write(12);
+                u2(pool, nameIndex);
+                u2(pool, descriptorIndex);
+                nameAndType = add("N" + name + descriptor);
+            }
+            pool.write(tag);
+            u2(pool, ownerIndex);
+            u2(pool, nameAndType);
+            return add(key);
+        }
+
+        private int add(String key) {
+            entries.put(key, poolCount);
+            return poolCount++;
+        }
+
+        private static void u2(ByteArrayOutputStream out, int value) {
+            out.write(value >>> 8);
+            out.write(value);
+        }
+
+        private static void u4(ByteArrayOutputStream out, int value) {
+            u2(out, value >>> 16);
+            u2(out, value);
+        }
+    }
+}
@@ -3,30 +3,111 @@ import java.util.*;
 import java.io.*;
 
 class CPU {
+  static final int CLOCKS_PER_MACHINE_CYCLE = 12; // oscillator periods per machine cycle
+  static final long DEFAULT_CRYSTAL_HZ = 12_000_000L; // 1 machine cycle = 1 us
+
+  // SFR addresses of the registers kept in fields here
+  static final int ACC = 0xE0;
+  static final int B = 0xF0;
+  static final int PSW = 0xD0;
+  static final int DPL = 0x82;
+  static final int DPH = 0x83;
+
   // cpu main component def
   private int pc;
   private int dptr;
   private byte acc;
   private byte b;
-  private byte psw;
-
-  // defining flags of the psw
-  private boolean carryFlag;
-  private boolean auxiliaryCarryFlag;
-  private boolean fo; // user def bit
-  private boolean regset1;
-  private boolean regset0;
-  private boolean overflowFlag;
-  private boolean parityFlag;
+  private int psw; // authoritative PSW byte, apart from the flags still pending below
+  private long instructionCount; // instructions executed since reset
+  private long machineCycles; // machine cycles spent since reset, per OpcodeTable.CYCLES
+  private long crystalHz = DEFAULT_CRYSTAL_HZ;
+
+  // PSW bits: CY AC F0 RS1 RS0 OV F1 P
+  static final int F0_BIT = 0x20;
+  static final int RS1_BIT = 0x10;
+  static final int RS0_BIT = 0x08;
+  private static final int ALU_BITS = AluFlags.CY | AluFlags.AC | AluFlags.OV | AluFlags.P;
+
+  // lazy flags: ALU instructions leave their AluFlags bits (or just the value P is the parity of)
+  // here and the PSW only takes them in when someone reads it. most flag results are overwritten
+  // by the next ALU instruction before anything looks at them. -1 = nothing pending
+  private int pendingAluFlags = -1;
+  private int pendingParity = -1; // newer than pendingAluFlags when both are set
+  private int bankBase; // RAM address of R0, 8 * (RS1 RS0), kept in step with the bank bits
+  private int idleLoopCycles; // cycles per pass of the self jump just taken, 0 = not in one
+  private boolean idleLoopTests; // the self jump tests a flag (JNB TF0,$...), not SJMP $
 
   private Memory memory;
   private InstructionSet instructionSet;
   private Pins pins;	
+  private ExecutionMode executionMode = ExecutionMode.TABLE;
+  private DecodeCache decodeCache; // created on first switch to DECODED
+  private BlockTranslator translator; // created on first switch to TRANSLATED
+  private WriteJournal journal; // null unless reverse execution is enabled
+  private Profiler profiler; // null unless profiling
+  private Coverage coverage; // null unless collecting coverage
+  private final EventScheduler scheduler = new EventScheduler();
+  private final Timers timers;
+  private final Interrupts interrupts;
+  // what Interrupts says may be taken at the next instruction boundary, 0 almost always
+  private int interruptRequests;
+
   public CPU(Memory memory, Pins pins) {
       this.memory = memory;
+      this.pins = pins;
       this.instructionSet = new InstructionSet(this, memory,pins);
+      installSfrHooks();
+      this.timers = new Timers(this, memory, pins, scheduler);
+      this.interrupts = new Interrupts(this, memory, pins, timers);
       reset();
   }
+
+  // ACC, B, PSW and DPTR stay in fields and the port latches in Pins, the SFR space reaches
+  // them through hooks so MOV direct / SETB bit work on them like on any other SFR
+  private void installSfrHooks() {
+    SfrHook registers = new SfrHook() {
+      public int read(int address) {
+        switch (address) {
+          case ACC: return acc & 0xFF;
+          case B: return b & 0xFF;
+          case PSW: return readPsw();
+          case DPL: return dptr & 0xFF;
+          default: return dptr >>> 8; // DPH
+        }
+      }
+
+      public void write(int address, int value) {
+        switch (address) {
+          case ACC:
+            acc = (byte) value;
+            pendingParity = value;
+            break;
+          case B: b = (byte) value; break;
+          case PSW: writePsw(value); break;
+          case DPL: dptr = (dptr & 0xFF00) | value; break;
+          default: dptr = (value << 8) | (dptr & 0xFF); // DPH
+        }
+      }
+    };
+    for (int address : new int[] {ACC, B, PSW, DPL, DPH}) {
+      memory.setSfrHook(address, registers);
+    }
+
+    // P0 0x80, P1 0x90, P2 0xA0, P3 0xB0
+    SfrHook ports = new SfrHook() {
+      public int read(int address) {
+        return pins.readPort((address - 0x80) >> 4);
+      }
+
+      public void write(int address, int value) {
+        pins.writePort((address - 0x80) >> 4, value);
+      }
+    };
+    for (int port = 0; port < 4; port++) {
+      memory.setSfrHook(0x80 + 16 * port, ports);
+    }
+  }
  // cpu main component def end
  
    // imp functions
@@ -36,34 +117,180 @@ class CPU {
     this.acc = 0x00;
     this.b = 0x00;
     this.psw = 0x00;
-    this.carryFlag = false;
-    this.auxiliaryCarryFlag = false;
-    this.fo = false;
-    this.regset1 = false;
-    this.regset0 = false;
-    this.overflowFlag = false;
-    this.parityFlag = false;
+    this.pendingAluFlags = -1;
+    this.pendingParity = -1;
+    this.instructionCount = 0;
+    this.machineCycles = 0;
+    this.bankBase = 0;
+    this.idleLoopCycles = 0;
+	memory.resetSfrs();
+	scheduler.clear();
+	timers.reset();
+	interrupts.reset();
 	instructionSet.pinReset();
+    if (journal != null) {
+      journal.clear(); // nothing before a reset can be stepped back into
+    }
   }
 
 
   public int fetch() {
-    int opcode = memory.readByte(pc);
+    int opcode = memory.fetchByte(pc);
+    if (coverage != null) {
+      coverage.mark(pc);
+    }
     pc++;
     return opcode;
   }
 
   public void execute(int opcode) {
-    instructionSet.executeInstruction(opcode);
+    if (executionMode == ExecutionMode.REFERENCE) {
+      instructionSet.executeInstruction(opcode);
+      return;
+    }
+    // table engine: fetch the operands up front, then one indexed call
+    int length = OpcodeTable.LENGTH[opcode];
+    int operand1 = length > 1 ? fetch() : 0;
+    int operand2 = length > 2 ? fetch() : 0;
+    instructionSet.dispatch(opcode, operand1, operand2);
   }
 
+  // one instruction, or a whole translated block in TRANSLATED mode
   public void cycle() {
-    int opcode = fetch();
-    execute(opcode);
+    if (executionMode == ExecutionMode.TRANSLATED && journal == null) {
+      // a block is many instructions, the journal needs them one at a time
+      int executed = translator.run(pc);
+      if (executed != 0) {
+        instructionCount += executed;
+        runDueEvents(); // blocks stop at the instruction that reaches the next event
+        if (interruptRequests != 0) {
+          takeInterrupt();
+        }
+        return;
+      }
+    }
+    step();
+  }
+
+  // exactly one instruction whatever the engine, for the journal and the debugger
+  public void step() {
+    if (journal != null) {
+      journal.beginInstruction();
+    }
+    if (executionMode != ExecutionMode.DECODED || !stepDecoded()) {
+      int opcode = fetch();
+      instructionCount++;
+      machineCycles += OpcodeTable.CYCLES[opcode];
+      if (profiler != null) {
+        profiler.record(pc - 1, opcode, OpcodeTable.CYCLES[opcode]);
+      }
+      execute(opcode);
+    }
+    runDueEvents();
+    if (interruptRequests != 0) {
+      takeInterrupt();
+    }
+  }
+
+  // the hardware LCALL to the vector of the interrupt Interrupts picks
+  private void takeInterrupt() {
+    int vector = interrupts.take(interruptRequests);
+    if (vector >= 0) {
+      idleLoopCycles = 0; // an idle loop is left for the handler
+      machineCycles += 2;
+      instructionSet.call(vector);
+    }
+  }
+
+  // false if the instruction at pc runs past the end of code memory, step() then fetches it
+  private boolean stepDecoded() {
+    DecodeCache.DecodedInstruction decoded = decodeCache.get(pc);
+    if (decoded == null) {
+      return false;
+    }
+    if (profiler != null) {
+      profiler.record(pc, decoded.opcode, decoded.cycles);
+    }
+    if (coverage != null && decoded.coveredBy != coverage) {
+      coverage.markRange(pc, pc + decoded.length);
+      decoded.coveredBy = coverage;
+    }
+    pc += decoded.length;
+    instructionCount++;
+    machineCycles += decoded.cycles;
+    decoded.handler.execute(decoded.opcode, decoded.operand1, decoded.operand2);
+    return true;
+  }
+
+  // timer overflows and the like take effect between instructions, one compare when nothing is due
+  private void runDueEvents() {
+    if (machineCycles >= scheduler.nextDue()) {
+      scheduler.runDue(machineCycles);
+    }
   }
   // imp functions end
 
   // getters setterssss for various thingys
+  void setJournal(WriteJournal journal) {
+    this.journal = journal;
+    timers.setJournal(journal);
+    interrupts.setJournal(journal);
+  }
+
+  WriteJournal getJournal() {
+    return journal;
+  }
+
+  void setProfiler(Profiler profiler) {
+    this.profiler = profiler;
+  }
+
+  Profiler getProfiler() {
+    return profiler;
+  }
+
+  void setCoverage(Coverage coverage) {
+    this.coverage = coverage;
+  }
+
+  Coverage getCoverage() {
+    return coverage;
+  }
+
+  EventScheduler getScheduler() {
+    return scheduler;
+  }
+
+  Timers getTimers() {
+    return timers;
+  }
+
+  Interrupts getInterrupts() {
+    return interrupts;
+  }
+
+  void setInterruptRequests(int requests) {
+    interruptRequests = requests;
+  }
+
+  boolean hasInterruptRequests() {
+    return interruptRequests != 0;
+  }
+
+  public ExecutionMode getExecutionMode() {
+    return executionMode;
+  }
+
+  public void setExecutionMode(ExecutionMode executionMode) {
+    if (executionMode == ExecutionMode.DECODED && decodeCache == null) {
+      decodeCache = new DecodeCache(memory, instructionSet);
+    }
+    if (executionMode == ExecutionMode.TRANSLATED && translator == null) {
+      translator = new BlockTranslator(this, memory, instructionSet);
+    }
+    this.executionMode = executionMode;
+  }
+
   public byte getAccumulator() {
     return acc;
   }
@@ -72,6 +299,39 @@ class CPU {
     this.acc = acc;
   }
 
+  public long getInstructionCount() {
+    return instructionCount;
+  }
+
+  public long getMachineCycles() {
+    return machineCycles;
+  }
+
+  // used by BlockTranslator, which charges cycles itself
+  void addMachineCycles(long cycles) {
+    machineCycles += cycles;
+  }
+
+  public long getCrystalFrequency() {
+    return crystalHz;
+  }
+
+  public void setCrystalFrequency(long crystalHz) {
+    if (crystalHz <= 0) {
+      throw new IllegalArgumentException("Crystal frequency must be positive: " + crystalHz);
+    }
+    this.crystalHz = crystalHz;
+  }
+
+  // simulated time for a number of machine cycles at the current crystal frequency
+  public double machineCyclesToNanos(long cycles) {
+    return cycles * (CLOCKS_PER_MACHINE_CYCLE * 1e9 / crystalHz);
+  }
+
+  public double getSimulatedNanos() {
+    return machineCyclesToNanos(machineCycles);
+  }
+
   public int getProgramCounter() {
     return pc;
   }
@@ -97,101 +357,165 @@ class CPU {
   }
 
   public int getPsw() {
-    return psw;
+    return readPsw();
   }
 
   public void setpsw(byte psw) {
-    this.psw = psw;
+    writePsw(psw & 0xFF);
   }
 
   public boolean getcarryFlag() {
-    return carryFlag;
+    return (readPsw() & AluFlags.CY) != 0;
   }
 
-  public void setcarryFlag(Boolean carryFlag) {
-    this.carryFlag = carryFlag;
+  public void setcarryFlag(boolean carryFlag) {
+    setPswBit(AluFlags.CY, carryFlag);
   }
 
   public boolean getauxiliaryCarryFlag() {
-    return auxiliaryCarryFlag;
+    return (readPsw() & AluFlags.AC) != 0;
   }
 
-  public void setauxiliaryCarryFlag(Boolean auxiliaryCarryFlag) {
-    this.auxiliaryCarryFlag = auxiliaryCarryFlag;
+  public void setauxiliaryCarryFlag(boolean auxiliaryCarryFlag) {
+    setPswBit(AluFlags.AC, auxiliaryCarryFlag);
   }
 
   public boolean getfo() {
-    return fo;
+    return (psw & F0_BIT) != 0;
   }
 
-  public void setfo(Boolean fo) {
-    this.fo = fo;
+  public void setfo(boolean fo) {
+    setPswBit(F0_BIT, fo);
   }
 
   public boolean getregset1() {
-    return regset1;
+    return (psw & RS1_BIT) != 0;
   }
 
-  public void setregset1(Boolean regset1) {
-    this.regset1 = regset1;
+  public void setregset1(boolean regset1) {
+    setPswBit(RS1_BIT, regset1);
   }
 
   public boolean getregset0() {
-    return regset0;
+    return (psw & RS0_BIT) != 0;
+  }
+
+  public void setregset0(boolean regset0) {
+    setPswBit(RS0_BIT, regset0);
   }
 
-  public void setregset0(Boolean regset0) {
-    this.regset0 = regset0;
+  // address of R0 in the selected bank: 0x00, 0x08, 0x10 or 0x18
+  public int getBankBase() {
+    return bankBase;
   }
 
   public boolean getoverflowFlag() {
-    return overflowFlag;
+    return (readPsw() & AluFlags.OV) != 0;
   }
 
-  public void setoverflowFlag(Boolean overflowFlag) {
-    this.overflowFlag = overflowFlag;
+  public void setoverflowFlag(boolean overflowFlag) {
+    setPswBit(AluFlags.OV, overflowFlag);
   }
 
   public boolean getparityFlag() {
-    return parityFlag;
+    return (readPsw() & AluFlags.P) != 0;
+  }
+
+  public void setparityFlag(boolean parityFlag) {
+    setPswBit(AluFlags.P, parityFlag);
+  }
+
+  // PSW as the SFR space sees it, pending flags are folded in first
+  public int readPsw() {
+    if (pendingAluFlags >= 0) {
+      psw = (psw & ~ALU_BITS) | pendingAluFlags;
+      pendingAluFlags = -1;
+    }
+    if (pendingParity >= 0) {
+      psw = AluFlags.PARITY[pendingParity] ? psw | AluFlags.P : psw & ~AluFlags.P;
+      pendingParity = -1;
+    }
+    return psw;
+  }
+
+  public void writePsw(int value) {
+    psw = value & 0xFF;
+    pendingAluFlags = -1;
+    pendingParity = -1;
+    bankBase = psw & (RS1_BIT | RS0_BIT); // 8 * bank, the bank bits sit at 0x18
+  }
+
+  private void setPswBit(int mask, boolean value) {
+    int current = readPsw();
+    writePsw(value ? current | mask : current & ~mask);
+  }
+
+  // set by a jump to its own address (SJMP $, JNB bit,$...), Machine takes it after the instruction
+  void enterIdleLoop(int cycles, boolean tests) {
+    idleLoopCycles = cycles;
+    idleLoopTests = tests;
+  }
+
+  boolean isIdle() {
+    return idleLoopCycles != 0;
+  }
+
+  // false for an unconditional self jump, which no flag set by an event can end
+  boolean idleLoopTests() {
+    return idleLoopTests;
+  }
+
+  // cycles per pass of the idle loop, and leaves it
+  int takeIdleLoop() {
+    int cycles = idleLoopCycles;
+    idleLoopCycles = 0;
+    return cycles;
+  }
+
+  // charges `passes` more runs of the idle loop at pc without executing them, nothing else changes
+  void skipIdlePasses(long passes, int cycles) {
+    instructionCount += passes;
+    machineCycles += passes * cycles;
+    if (profiler != null) {
+      profiler.recordRepeated(pc, memory.fetchByte(pc), cycles, passes);
+    }
   }
 
-  public void setparityFlag(Boolean parityFlag) {
-    this.parityFlag = parityFlag;
+  // used by MachineSnapshot to put a machine back to an earlier point
+  void restoreCounters(long instructionCount, long machineCycles) {
+    this.instructionCount = instructionCount;
+    this.machineCycles = machineCycles;
+  }
+
+  // CY/AC/OV/P in one go, bits at their PSW positions (see AluFlags), taken in lazily
+  public void setAluFlags(int flags) {
+    pendingAluFlags = flags;
+    pendingParity = -1;
+  }
+
+  // P = parity of value, taken in lazily
+  public void setParityOf(int value) {
+    pendingParity = value & 0xFF;
   }
   // getters setters for various thingys end
 
 
   // display
   public void displayRegisters() {
-    System.out.println("Accumulator: 0x" + String.format("%02X", acc));
-    System.out.println("DPTR: 0x" + String.format("%04X", dptr));
-    System.out.println("B Register: 0x" + String.format("%02X", b));
-    System.out.println("Program Counter: 0x" + String.format("%04X", pc));
+    if (Trace.INFO_ENABLED) {
+      Trace.event(Trace.INFO, Trace.REGISTERS, acc, dptr, b, pc);
+    }
   }
   
 
   
   public void setAndDisplayPSW() {
    
-    psw = 0;
-    if (carryFlag) psw |= (1 << 7);
-    if (auxiliaryCarryFlag) psw |= (1 << 6);
-    if (fo) psw |= (1 << 5);
-    if (regset1) psw |= (1 << 4);
-    if (regset0) psw |= (1 << 3);
-    if (overflowFlag) psw |= (1 << 2);
-    if (parityFlag) psw |= (1 << 0);
-
-    System.out.println("PSW: 0x" + String.format("%02X", psw));
-    System.out.println("Carry Flag (CY): " + carryFlag);
-    System.out.println("Auxiliary Carry Flag (AC): " + auxiliaryCarryFlag);
-    System.out.println("FO: " + fo);
-    System.out.println("Register Bank Select (RS1): " + regset1);
-    System.out.println("Register Bank Select (RS0): " + regset0);
-    System.out.println("Overflow Flag (OV): " + overflowFlag);
-    System.out.println("Parity Flag (P): " + parityFlag);
-	System.out.println("overflow for auxiliaryCarry: "+ getauxiliaryCarryFlag());
+    readPsw();
+
+    if (Trace.INFO_ENABLED) {
+      Trace.event(Trace.INFO, Trace.PSW, psw, 0, 0, 0);
+    }
   }
   //display end
 
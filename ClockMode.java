@@ -0,0 +1,5 @@
+// how Machine.run() relates simulated time to wall-clock time
+enum ClockMode {
+    FREE_RUN, // as fast as possible, the run reports simulated MIPS against wall-clock time
+    REAL_TIME // paced so simulated time (machine cycles at the crystal frequency) tracks wall-clock time
+}
@@ -0,0 +1,4 @@
+// told when code memory in [from, to) has been overwritten
+interface CodeWriteListener {
+    void codeWritten(int from, int to);
+}
@@ -0,0 +1,182 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+// ROM code coverage (Machine.enableCoverage)
+// one bit per code memory byte, set for every opcode and operand byte the CPU executes.
+// the step path marks bytes as CPU.fetch() reads them, decoded instructions and translated
+// blocks mark their whole range once and remember that they did, so a hot loop pays a
+// pointer compare per instruction or block after its first pass.
+// bitmaps of runs over the same ROM merge with a bitwise OR, see merge() and main().
+class Coverage {
+    private static final int MAGIC = 0x434F5631; // "COV1"
+
+    private final int codeSize;
+    private final long[] bits;
+
+    Coverage(int codeSize) {
+        this.codeSize = codeSize;
+        this.bits = new long[(codeSize + 63) >>> 6];
+    }
+
+    void mark(int address) {
+        bits[address >>> 6] |= 1L << address;
+    }
+
+    // [from, to)
+    void markRange(int from, int to) {
+        for (int address = from; address < to; address++) {
+            bits[address >>> 6] |= 1L << address;
+        }
+    }
+
+    public boolean isCovered(int address) {
+        return (bits[address >>> 6] & (1L << address)) != 0;
+    }
+
+    public int getCodeSize() {
+        return codeSize;
+    }
+
+    // covered bytes
+    public int count() {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    // adds every byte other covered, both must describe the same ROM size
+    public void merge(Coverage other) {
+        if (other.codeSize != codeSize) {
+            throw new IllegalArgumentException("Coverage of " + other.codeSize + " bytes cannot merge into " + codeSize);
+        }
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] |= other.bits[i];
+        }
+    }
+
+    public Coverage copy() {
+        Coverage copy = new Coverage(codeSize);
+        copy.merge(this);
+        return copy;
+    }
+
+    // disassembly of rom with '+' in front of executed instructions and '-' in front of the rest.
+    // the walk is linear from 0 to the last non zero or covered byte, by OpcodeTable lengths
+    public String listing(Memory memory) {
+        int end = Math.min(codeSize, memory.getCodeSize());
+        while (end > 0 && memory.fetchByte(end - 1) == 0 && !isCovered(end - 1)) {
+            end--;
+        }
+        StringBuilder sb = new StringBuilder();
+        int instructions = 0;
+        int covered = 0;
+        int pc = 0;
+        while (pc < end) {
+            int opcode = memory.fetchByte(pc);
+            int length = OpcodeTable.isDefined(opcode) ? Math.min(OpcodeTable.LENGTH[opcode], end - pc) : 1;
+            boolean hit = isCovered(pc);
+            StringBuilder bytes = new StringBuilder();
+            for (int i = 0; i < length; i++) {
+                bytes.append(String.format("%02X ", memory.fetchByte(pc + i)));
+            }
+            String text = OpcodeTable.isDefined(opcode) ? OpcodeTable.MNEMONIC[opcode] : String.format("DB 0x%02X", opcode);
+            sb.append(hit ? '+' : '-').append(String.format(" %04X  %-9s %s%n", pc, bytes, text));
+            instructions++;
+            covered += hit ? 1 : 0;
+            pc += length;
+        }
+        sb.insert(0, String.format(Locale.ROOT, "Coverage: %d of %d instructions (%.1f%%), %d bytes%n", covered, instructions,
+                instructions == 0 ? 0.0 : covered * 100.0 / instructions, count()));
+        return sb.toString();
+    }
+
+    // binary form, big endian: int magic, int ROM size, then the bitmap as longs
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(codeSize);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+        out.flush();
+    }
+
+    public static Coverage read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a coverage file");
+        }
+        int codeSize = in.readInt();
+        if (codeSize < 0 || codeSize > 0x10000) {
+            throw new IOException("Corrupt coverage file: ROM size " + codeSize);
+        }
+        Coverage coverage = new Coverage(codeSize);
+        for (int i = 0; i < coverage.bits.length; i++) {
+            coverage.bits[i] = in.readLong();
+        }
+        return coverage;
+    }
+
+    public void save(Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            write(out);
+        }
+    }
+
+    public static Coverage load(Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            return read(in);
+        }
+    }
+
+    // java Coverage <merged.cov> <run.cov>... [--listing <program>]
+    // ORs the coverage of many runs into one file, optionally printing the listing of program
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("usage: java Coverage merged.cov run.cov... [--listing program]");
+            System.exit(2);
+        }
+        try {
+            Coverage merged = null;
+            String program = null;
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--listing")) {
+                    if (++i >= args.length) {
+                        throw new IllegalArgumentException("Missing value for --listing");
+                    }
+                    program = args[i];
+                    continue;
+                }
+                Coverage run = load(Paths.get(args[i]));
+                if (merged == null) {
+                    merged = run;
+                } else {
+                    merged.merge(run);
+                }
+            }
+            if (merged == null) {
+                throw new IllegalArgumentException("No coverage files given");
+            }
+            merged.save(Paths.get(args[0]));
+            if (program != null) {
+                Memory memory = new Memory(merged.codeSize, 0);
+                ProgramLoader.load(memory, program);
+                System.out.print(merged.listing(memory));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+// breakpoints and watchpoints for one Machine (Machine.debugger())
+// every address space has a bitmap, one bit per address, so checking an access is a shift and
+// a mask. nothing is hooked while nothing is set: Memory only calls back while a memory
+// watchpoint exists and Machine.run() only takes the instrumented loop while anything is armed,
+// otherwise the normal engines (including translated blocks) run untouched.
+//   PC breakpoint      stops before the instruction at that address runs, optionally only when
+//                      a condition on the CPU holds
+//   condition          checked after every instruction, stops as soon as it holds
+//   RAM/ROM watchpoint stops after the instruction that read or wrote the byte
+//   SFR watchpoint     the same for an SFR (0x80-0xFF, ports, ACC and PSW included) accessed by
+//                      direct address. @R0/@R1 at 0x80-0xFF is upper RAM and needs a RAM watchpoint
+//   pin watchpoint     stops after the instruction during which the pin changed level
+// instruction fetches never trigger ROM read watchpoints, only MOVC reads do. a program cannot
+// write ROM, ROM write watchpoints catch writes from outside it (loaders, Memory.writeByte). the
+// journal putting old values back when stepping back triggers nothing.
+// a run never stops on the breakpoint it starts on, so run() again continues past it.
+class Debugger implements PinListener {
+    enum HitKind { BREAKPOINT, CONDITION, RAM_READ, RAM_WRITE, ROM_READ, ROM_WRITE, SFR_READ, SFR_WRITE, PIN }
+
+    private static final int WORDS = 0x10000 / 64; // 64K addresses per space
+
+    private final CPU cpu;
+    private final Memory memory;
+    private final long[] pcBreaks = new long[WORDS];
+    private final long[] ramReads = new long[WORDS];
+    private final long[] ramWrites = new long[WORDS];
+    private final long[] romReads = new long[WORDS];
+    private final long[] romWrites = new long[WORDS];
+    private final long[] sfrReads = new long[WORDS];
+    private final long[] sfrWrites = new long[WORDS];
+    private final Map<Integer, Predicate<CPU>> pcConditions = new HashMap<>();
+    private final List<Predicate<CPU>> conditions = new ArrayList<>();
+    private final List<Pin> watchedPins = new ArrayList<>();
+    private int breakpointCount;
+    private int memoryWatchCount;
+
+    // set by the memory and pin hooks during an instruction, looked at after it
+    private HitKind pending;
+    private int pendingAddress;
+    private Pin pendingPin;
+
+    // what stopped the last run
+    private HitKind hitKind;
+    private int hitAddress;
+    private int hitPc;
+    private Pin hitPin;
+
+    Debugger(CPU cpu, Memory memory) {
+        this.cpu = cpu;
+        this.memory = memory;
+    }
+
+    // true while anything is set, Machine.run() then single steps
+    public boolean isArmed() {
+        return breakpointCount != 0 || memoryWatchCount != 0 || !conditions.isEmpty() || !watchedPins.isEmpty();
+    }
+
+    public void addBreakpoint(int pc) {
+        pcConditions.remove(pc & 0xFFFF);
+        if (set(pcBreaks, pc)) {
+            breakpointCount++;
+        }
+    }
+
+    // breaks at pc only when condition holds (e.g. cpu -> cpu.getAccumulator() == 5)
+    public void addBreakpoint(int pc, Predicate<CPU> condition) {
+        if (set(pcBreaks, pc)) {
+            breakpointCount++;
+        }
+        pcConditions.put(pc & 0xFFFF, condition);
+    }
+
+    public void removeBreakpoint(int pc) {
+        if (clear(pcBreaks, pc)) {
+            breakpointCount--;
+        }
+        pcConditions.remove(pc & 0xFFFF);
+    }
+
+    public boolean hasBreakpoint(int pc) {
+        return test(pcBreaks, pc);
+    }
+
+    // stops after any instruction that leaves the condition true
+    public void addCondition(Predicate<CPU> condition) {
+        conditions.add(condition);
+    }
+
+    public void removeCondition(Predicate<CPU> condition) {
+        conditions.remove(condition);
+    }
+
+    public void watchRam(int address, boolean reads, boolean writes) {
+        watch(ramReads, ramWrites, address, reads, writes);
+    }
+
+    public void unwatchRam(int address) {
+        watch(ramReads, ramWrites, address, false, false);
+    }
+
+    public void watchRom(int address, boolean reads, boolean writes) {
+        watch(romReads, romWrites, address, reads, writes);
+    }
+
+    public void unwatchRom(int address) {
+        watch(romReads, romWrites, address, false, false);
+    }
+
+    // address 0x80-0xFF
+    public void watchSfr(int address, boolean reads, boolean writes) {
+        watch(sfrReads, sfrWrites, address, reads, writes);
+    }
+
+    public void unwatchSfr(int address) {
+        watch(sfrReads, sfrWrites, address, false, false);
+    }
+
+    public void watchPin(Pin pin) {
+        if (!watchedPins.contains(pin)) {
+            watchedPins.add(pin);
+            pin.addListener(this);
+        }
+    }
+
+    public void unwatchPin(Pin pin) {
+        if (watchedPins.remove(pin)) {
+            pin.removeListener(this);
+        }
+    }
+
+    // removes every breakpoint, condition and watchpoint
+    public void clearAll() {
+        for (int i = 0; i < WORDS; i++) {
+            pcBreaks[i] = ramReads[i] = ramWrites[i] = romReads[i] = romWrites[i] = sfrReads[i] = sfrWrites[i] = 0;
+        }
+        pcConditions.clear();
+        conditions.clear();
+        for (Pin pin : watchedPins) {
+            pin.removeListener(this);
+        }
+        watchedPins.clear();
+        breakpointCount = 0;
+        memoryWatchCount = 0;
+        memory.setWatcher(null);
+    }
+
+    private void watch(long[] reads, long[] writes, int address, boolean onRead, boolean onWrite) {
+        memoryWatchCount += update(reads, address, onRead) + update(writes, address, onWrite);
+        memory.setWatcher(memoryWatchCount != 0 ? this : null);
+    }
+
+    // +1 when the bit was set, -1 when it was cleared, 0 when it already had that value
+    private static int update(long[] bits, int address, boolean on) {
+        if (on) {
+            return set(bits, address) ? 1 : 0;
+        }
+        return clear(bits, address) ? -1 : 0;
+    }
+
+    private static boolean set(long[] bits, int address) {
+        if (test(bits, address)) {
+            return false;
+        }
+        bits[(address & 0xFFFF) >>> 6] |= 1L << address;
+        return true;
+    }
+
+    private static boolean clear(long[] bits, int address) {
+        if (!test(bits, address)) {
+            return false;
+        }
+        bits[(address & 0xFFFF) >>> 6] &= ~(1L << address);
+        return true;
+    }
+
+    private static boolean test(long[] bits, int address) {
+        return (bits[(address & 0xFFFF) >>> 6] & (1L << address)) != 0;
+    }
+
+    // memory hooks, only installed while a RAM, ROM or SFR watchpoint exists
+    void dataRead(int address) {
+        if (test(ramReads, address)) {
+            pend(HitKind.RAM_READ, address);
+        }
+    }
+
+    void dataWritten(int address) {
+        if (test(ramWrites, address)) {
+            pend(HitKind.RAM_WRITE, address);
+        }
+    }
+
+    void codeRead(int address) {
+        if (test(romReads, address)) {
+            pend(HitKind.ROM_READ, address);
+        }
+    }
+
+    void codeWritten(int address) {
+        if (test(romWrites, address)) {
+            pend(HitKind.ROM_WRITE, address);
+        }
+    }
+
+    void sfrRead(int address) {
+        if (test(sfrReads, address)) {
+            pend(HitKind.SFR_READ, address);
+        }
+    }
+
+    void sfrWritten(int address) {
+        if (test(sfrWrites, address)) {
+            pend(HitKind.SFR_WRITE, address);
+        }
+    }
+
+    @Override
+    public void pinChanged(Pin pin, long time) {
+        WriteJournal journal = cpu.getJournal();
+        if (journal != null && journal.isUndoing()) {
+            return; // stepping back restores the level, the program did not change it
+        }
+        if (pending == null) {
+            pendingPin = pin;
+        }
+        pend(HitKind.PIN, -1);
+    }
+
+    // the first access in an instruction is the one reported
+    private void pend(HitKind kind, int address) {
+        if (pending == null) {
+            pending = kind;
+            pendingAddress = address;
+        }
+    }
+
+    // called by Machine.run() when an instrumented run starts, forgets accesses made outside it
+    void beginRun() {
+        pending = null;
+        pendingPin = null;
+    }
+
+    // before the instruction at pc runs
+    boolean shouldBreakAt(int pc) {
+        if (!test(pcBreaks, pc)) {
+            return false;
+        }
+        Predicate<CPU> condition = pcConditions.get(pc & 0xFFFF);
+        if (condition != null && !condition.test(cpu)) {
+            return false;
+        }
+        hit(HitKind.BREAKPOINT, pc, pc, null);
+        return true;
+    }
+
+    // after the instruction at pc ran
+    boolean shouldBreakAfter(int pc) {
+        if (pending != null) {
+            hit(pending, pendingAddress, pc, pendingPin);
+            beginRun();
+            return true;
+        }
+        for (int i = 0; i < conditions.size(); i++) {
+            if (conditions.get(i).test(cpu)) {
+                hit(HitKind.CONDITION, -1, pc, null);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void hit(HitKind kind, int address, int pc, Pin pin) {
+        hitKind = kind;
+        hitAddress = address;
+        hitPc = pc;
+        hitPin = pin;
+    }
+
+    public HitKind getHitKind() {
+        return hitKind;
+    }
+
+    // breakpoint or watched address, -1 for conditions and pins
+    public int getHitAddress() {
+        return hitAddress;
+    }
+
+    // address of the instruction that triggered the stop
+    public int getHitPc() {
+        return hitPc;
+    }
+
+    // the pin of a PIN hit, null otherwise
+    public Pin getHitPin() {
+        return hitPin;
+    }
+
+    // one line for logs and the UI
+    public String describeHit() {
+        if (hitKind == null) {
+            return "no breakpoint hit";
+        }
+        switch (hitKind) {
+            case BREAKPOINT:
+                return String.format("breakpoint at 0x%04X", hitPc);
+            case CONDITION:
+                return String.format("condition met after 0x%04X", hitPc);
+            case PIN:
+                return String.format("pin %s changed at 0x%04X", hitPin.getPinName(), hitPc);
+            default:
+                return String.format("%s 0x%04X at 0x%04X", hitKind.name().toLowerCase().replace('_', ' '), hitAddress, hitPc);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+// pre-decoded instruction cache (ExecutionMode.DECODED)
+// one entry per ROM address, filled the first time the PC lands there. a write to code
+// memory drops every entry whose bytes include the written address.
+class DecodeCache implements CodeWriteListener {
+    private static final int MAX_INSTRUCTION_LENGTH = 3;
+
+    private final Memory memory;
+    private final InstructionSet instructionSet;
+    private final DecodedInstruction[] entries;
+
+    public DecodeCache(Memory memory, InstructionSet instructionSet) {
+        this.memory = memory;
+        this.instructionSet = instructionSet;
+        this.entries = new DecodedInstruction[memory.getCodeSize()];
+        memory.addCodeWriteListener(this);
+    }
+
+    // null if the instruction at pc starts or runs past the end of code memory
+    public DecodedInstruction get(int pc) {
+        if (pc >= entries.length) {
+            return null;
+        }
+        DecodedInstruction entry = entries[pc];
+        if (entry == null) {
+            entry = decode(pc);
+            entries[pc] = entry;
+        }
+        return entry;
+    }
+
+    private DecodedInstruction decode(int pc) {
+        int opcode = memory.fetchByte(pc);
+        int length = OpcodeTable.LENGTH[opcode];
+        if (pc + length > entries.length) {
+            return null;
+        }
+        int operand1 = length > 1 ? memory.fetchByte(pc + 1) : 0;
+        int operand2 = length > 2 ? memory.fetchByte(pc + 2) : 0;
+        return new DecodedInstruction(opcode, operand1, operand2, length, OpcodeTable.CYCLES[opcode],
+                instructionSet.handlerFor(opcode));
+    }
+
+    @Override
+    public void codeWritten(int from, int to) {
+        for (int address = Math.max(0, from - MAX_INSTRUCTION_LENGTH + 1); address < to && address < entries.length; address++) {
+            DecodedInstruction entry = entries[address];
+            if (entry != null && address + entry.length > from) {
+                entries[address] = null;
+            }
+        }
+    }
+
+    static final class DecodedInstruction {
+        final int opcode;
+        final int operand1;
+        final int operand2;
+        final int length;
+        final int cycles;
+        final OpcodeHandler handler;
+        Coverage coveredBy; // the coverage that already has this instruction's bytes
+
+        DecodedInstruction(int opcode, int operand1, int operand2, int length, int cycles, OpcodeHandler handler) {
+            this.opcode = opcode;
+            this.operand1 = operand1;
+            this.operand2 = operand2;
+            this.length = length;
+            this.cycles = cycles;
+            this.handler = handler;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+import java.util.Arrays;
+
+// discrete-event queue of one machine (timer overflows and the like)
+// a binary min-heap of event ids keyed by the machine cycle they are due at. every source
+// registers its event once and gets an id, an id is queued at most once, so rescheduling is a
+// sift in place and nothing is allocated while the machine runs. the CPU compares its cycle
+// counter with nextDue() after every instruction and calls runDue() once it is reached.
+class EventScheduler {
+    private ScheduledEvent[] events = new ScheduledEvent[4];
+    private long[] dueAt = new long[4];  // by id
+    private int[] position = new int[4]; // by id, index in heap or -1
+    private int[] heap = new int[4];     // ids, earliest due first
+    private int registered;
+    private int size;
+    private long nextDue = Long.MAX_VALUE; // dueAt of heap[0], kept in a field for the CPU
+
+    // returns the id to schedule the event with
+    int register(ScheduledEvent event) {
+        if (registered == events.length) {
+            int capacity = registered * 2;
+            events = Arrays.copyOf(events, capacity);
+            dueAt = Arrays.copyOf(dueAt, capacity);
+            position = Arrays.copyOf(position, capacity);
+            heap = Arrays.copyOf(heap, capacity);
+        }
+        events[registered] = event;
+        position[registered] = -1;
+        return registered++;
+    }
+
+    // (re)schedules id at cycle, replacing any earlier schedule of it
+    void schedule(int id, long cycle) {
+        int at = position[id];
+        if (at < 0) {
+            at = size++;
+            heap[at] = id;
+            position[id] = at;
+            dueAt[id] = cycle;
+            siftUp(at);
+        } else {
+            long old = dueAt[id];
+            dueAt[id] = cycle;
+            if (cycle < old) {
+                siftUp(at);
+            } else {
+                siftDown(at);
+            }
+        }
+        nextDue = dueAt[heap[0]];
+    }
+
+    void cancel(int id) {
+        int at = position[id];
+        if (at >= 0) {
+            removeAt(at);
+        }
+    }
+
+    boolean isScheduled(int id) {
+        return position[id] >= 0;
+    }
+
+    // Long.MAX_VALUE when nothing is scheduled
+    long nextDue() {
+        return nextDue;
+    }
+
+    // fires everything due at or before now, earliest first. an event may schedule again,
+    // it runs again in this call if that is still not after now
+    void runDue(long now) {
+        while (nextDue <= now) {
+            int id = heap[0];
+            long due = dueAt[id];
+            removeAt(0);
+            events[id].fire(due);
+        }
+    }
+
+    // drops every pending event, registrations stay
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+        nextDue = Long.MAX_VALUE;
+    }
+
+    private void removeAt(int at) {
+        int id = heap[at];
+        position[id] = -1;
+        size--;
+        if (at != size) {
+            int last = heap[size];
+            heap[at] = last;
+            position[last] = at;
+            siftDown(at);
+            siftUp(position[last]);
+        }
+        nextDue = size == 0 ? Long.MAX_VALUE : dueAt[heap[0]];
+    }
+
+    private void siftUp(int at) {
+        int id = heap[at];
+        while (at > 0) {
+            int parent = (at - 1) >>> 1;
+            if (dueAt[heap[parent]] <= dueAt[id]) {
+                break;
+            }
+            heap[at] = heap[parent];
+            position[heap[at]] = at;
+            at = parent;
+        }
+        heap[at] = id;
+        position[id] = at;
+    }
+
+    private void siftDown(int at) {
+        int id = heap[at];
+        while (true) {
+            int child = 2 * at + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && dueAt[heap[child + 1]] < dueAt[heap[child]]) {
+                child++;
+            }
+            if (dueAt[id] <= dueAt[heap[child]]) {
+                break;
+            }
+            heap[at] = heap[child];
+            position[heap[at]] = at;
+            at = child;
+        }
+        heap[at] = id;
+        position[id] = at;
+    }
+}
@@ -0,0 +1,7 @@
+// selects how CPU.cycle() runs an instruction, can be switched at runtime
+enum ExecutionMode {
+    REFERENCE, // original switch interpreter (InstructionSet.executeInstruction)
+    TABLE,     // 256 entry handler table, operands fetched before dispatch
+    DECODED,   // per-address cache of decoded instructions (DecodeCache)
+    TRANSLATED // straight-line blocks compiled to hidden classes (BlockTranslator), cycle() runs a whole block
+}
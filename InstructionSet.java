@@ -7,12 +7,26 @@ public class InstructionSet {
     private Memory memory;
 	private Pins pins;
 
+    // handler table used by ExecutionMode.TABLE, indexed by opcode
+    private final OpcodeHandler[] handlers = new OpcodeHandler[256];
+
     public InstructionSet(CPU cpu, Memory memory, Pins pins) {
         this.cpu = cpu;
         this.memory = memory;
 		this.pins = pins; 
+        buildHandlerTable();
+    }
+
+    // table engine entry point, operands already fetched by the CPU
+    public void dispatch(int opcode, int operand1, int operand2) {
+        handlers[opcode].execute(opcode, operand1, operand2);
+    }
+
+    public OpcodeHandler handlerFor(int opcode) {
+        return handlers[opcode];
     }
 
+    // reference interpreter, kept as the original switch so the table engine can be checked against it
 	 public void executeInstruction(int opcode) {
     switch (opcode) {
         case 0xE4: // CLR A (Clear ACC)
@@ -34,137 +48,136 @@ public class InstructionSet {
             break;
 
         case 0xE8: // MOV A, R0
-            byte r0Value = (byte) memory.readDataByte(0x00);
+            byte r0Value = (byte) memory.readDataByte(cpu.getBankBase() + 0x00);
             cpu.setAccumulator(r0Value);
             cpu.setparityFlag(calculateParity(r0Value));
             break;
 
         case 0xE9: // MOV A, R1
-            byte r1Value = (byte) memory.readDataByte(0x01);
+            byte r1Value = (byte) memory.readDataByte(cpu.getBankBase() + 0x01);
             cpu.setAccumulator(r1Value);
             cpu.setparityFlag(calculateParity(r1Value));
             break;
 
         case 0xEA: // MOV A, R2
-            byte r2Value = (byte) memory.readDataByte(0x02);
+            byte r2Value = (byte) memory.readDataByte(cpu.getBankBase() + 0x02);
             cpu.setAccumulator(r2Value);
             cpu.setparityFlag(calculateParity(r2Value));
             break;
 
         case 0xEB: // MOV A, R3
-            byte r3Value = (byte) memory.readDataByte(0x03);
+            byte r3Value = (byte) memory.readDataByte(cpu.getBankBase() + 0x03);
             cpu.setAccumulator(r3Value);
             cpu.setparityFlag(calculateParity(r3Value));
             break;
 
         case 0xEC: // MOV A, R4
-            byte r4Value = (byte) memory.readDataByte(0x04);
+            byte r4Value = (byte) memory.readDataByte(cpu.getBankBase() + 0x04);
             cpu.setAccumulator(r4Value);
             cpu.setparityFlag(calculateParity(r4Value));
             break;
 
         case 0xED: // MOV A, R5
-            byte r5Value = (byte) memory.readDataByte(0x05);
+            byte r5Value = (byte) memory.readDataByte(cpu.getBankBase() + 0x05);
             cpu.setAccumulator(r5Value);
             cpu.setparityFlag(calculateParity(r5Value));
             break;
 
         case 0xEE: // MOV A, R6
-            byte r6Value = (byte) memory.readDataByte(0x06);
+            byte r6Value = (byte) memory.readDataByte(cpu.getBankBase() + 0x06);
             cpu.setAccumulator(r6Value);
             cpu.setparityFlag(calculateParity(r6Value));
             break;
 
         case 0xEF: // MOV A, R7
-            byte r7Value = (byte) memory.readDataByte(0x07);
+            byte r7Value = (byte) memory.readDataByte(cpu.getBankBase() + 0x07);
             cpu.setAccumulator(r7Value);
             cpu.setparityFlag(calculateParity(r7Value));
             break;
 
         case 0xF8: // MOV R0, A
-            memory.writeDataByte(0x00, cpu.getAccumulator());
+            memory.writeDataByte(cpu.getBankBase() + 0x00, cpu.getAccumulator());
             break;
 
         case 0xF9: // MOV R1, A
-            memory.writeDataByte(0x01, cpu.getAccumulator());
+            memory.writeDataByte(cpu.getBankBase() + 0x01, cpu.getAccumulator());
             break;
 
         case 0xFA: // MOV R2, A
-            memory.writeDataByte(0x02, cpu.getAccumulator());
+            memory.writeDataByte(cpu.getBankBase() + 0x02, cpu.getAccumulator());
             break;
 
         case 0xFB: // MOV R3, A
-            memory.writeDataByte(0x03, cpu.getAccumulator());
+            memory.writeDataByte(cpu.getBankBase() + 0x03, cpu.getAccumulator());
             break;
 
         case 0xFC: // MOV R4, A
-            memory.writeDataByte(0x04, cpu.getAccumulator());
+            memory.writeDataByte(cpu.getBankBase() + 0x04, cpu.getAccumulator());
             break;
 
         case 0xFD: // MOV R5, A
-            memory.writeDataByte(0x05, cpu.getAccumulator());
+            memory.writeDataByte(cpu.getBankBase() + 0x05, cpu.getAccumulator());
             break;
 
         case 0xFE: // MOV R6, A
-            memory.writeDataByte(0x06, cpu.getAccumulator());
+            memory.writeDataByte(cpu.getBankBase() + 0x06, cpu.getAccumulator());
             break;
 
         case 0xFF: // MOV R7, A
-            memory.writeDataByte(0x07, cpu.getAccumulator());
+            memory.writeDataByte(cpu.getBankBase() + 0x07, cpu.getAccumulator());
             break;
 
-        case 0x75: // MOV direct, #immediate (Move immediate value to direct address in memory)
+        case 0x75: // MOV direct, #immediate (Move immediate value to a RAM byte or SFR)
             int address = cpu.fetch();
             int directValue = cpu.fetch();
-            memory.writeByte(address, (byte) directValue);
-            cpu.setparityFlag(calculateParity(directValue));
+            memory.writeDirect(address, directValue);
             break;
 
         case 0x78: // MOV R0, #immediate
             int immR0 = cpu.fetch();
-            memory.writeDataByte(0x00, (byte) immR0);
+            memory.writeDataByte(cpu.getBankBase() + 0x00, (byte) immR0);
             cpu.setparityFlag(calculateParity(immR0));
             break;
 
         case 0x79: // MOV R1, #immediate
             int immR1 = cpu.fetch();
-            memory.writeDataByte(0x01, (byte) immR1);
+            memory.writeDataByte(cpu.getBankBase() + 0x01, (byte) immR1);
             cpu.setparityFlag(calculateParity(immR1));
             break;
 
         case 0x7A: // MOV R2, #immediate
             int immR2 = cpu.fetch();
-            memory.writeDataByte(0x02, (byte) immR2);
+            memory.writeDataByte(cpu.getBankBase() + 0x02, (byte) immR2);
             cpu.setparityFlag(calculateParity(immR2));
             break;
 
         case 0x7B: // MOV R3, #immediate
             int immR3 = cpu.fetch();
-            memory.writeDataByte(0x03, (byte) immR3);
+            memory.writeDataByte(cpu.getBankBase() + 0x03, (byte) immR3);
             cpu.setparityFlag(calculateParity(immR3));
             break;
 
         case 0x7C: // MOV R4, #immediate
             int immR4 = cpu.fetch();
-            memory.writeDataByte(0x04, (byte) immR4);
+            memory.writeDataByte(cpu.getBankBase() + 0x04, (byte) immR4);
             cpu.setparityFlag(calculateParity(immR4));
             break;
 
         case 0x7D: // MOV R5, #immediate
             int immR5 = cpu.fetch();
-            memory.writeDataByte(0x05, (byte) immR5);
+            memory.writeDataByte(cpu.getBankBase() + 0x05, (byte) immR5);
             cpu.setparityFlag(calculateParity(immR5));
             break;
 
         case 0x7E: // MOV R6, #immediate
             int immR6 = cpu.fetch();
-            memory.writeDataByte(0x06, (byte) immR6);
+            memory.writeDataByte(cpu.getBankBase() + 0x06, (byte) immR6);
             cpu.setparityFlag(calculateParity(immR6));
             break;
 
         case 0x7F: // MOV R7, #immediate
             int immR7 = cpu.fetch();
-            memory.writeDataByte(0x07, (byte) immR7);
+            memory.writeDataByte(cpu.getBankBase() + 0x07, (byte) immR7);
             cpu.setparityFlag(calculateParity(immR7));
             break;
 		
@@ -194,7 +207,7 @@ public class InstructionSet {
         case 0x2E: // ADD A, R6
         case 0x2F: { // ADD A, R7
             int registerIndex = opcode - 0x28;
-            int registerValue = memory.readDataByte(registerIndex) & 0xFF;
+            int registerValue = memory.readDataByte(cpu.getBankBase() + registerIndex) & 0xFF;
             int accumulatorValue = cpu.getAccumulator() & 0xFF;
             int result = accumulatorValue + registerValue;
 
@@ -209,11 +222,12 @@ public class InstructionSet {
 		 case 0x94: {
             int immediateValue = cpu.fetch();
             int accumulatorValue = cpu.getAccumulator() & 0xFF;  // Mask to 8 bits
-            int result = accumulatorValue - immediateValue;
+            int borrow = cpu.getcarryFlag() ? 1 : 0;
+            int result = accumulatorValue - immediateValue - borrow;
 
             // Set flags
-            cpu.setcarryFlag(calculateCarryForSubtraction(accumulatorValue, immediateValue));
-            cpu.setauxiliaryCarryFlag(calculateAuxiliaryCarryForSubtraction(accumulatorValue, immediateValue));
+            cpu.setcarryFlag(calculateCarryForSubtraction(accumulatorValue, immediateValue, borrow));
+            cpu.setauxiliaryCarryFlag(calculateAuxiliaryCarryForSubtraction(accumulatorValue, immediateValue, borrow));
             cpu.setoverflowFlag(calculateOverflowForSubtraction(accumulatorValue, immediateValue, result));
 
             // Store result in accumulator
@@ -232,13 +246,14 @@ public class InstructionSet {
         case 0x9E: // SUB A, R6
         case 0x9F: { // SUB A, R7
             int registerIndex = opcode - 0x98;
-            int registerValue = memory.readDataByte(registerIndex) & 0xFF; // Mask to 8 bits
+            int registerValue = memory.readDataByte(cpu.getBankBase() + registerIndex) & 0xFF; // Mask to 8 bits
             int accumulatorValue = cpu.getAccumulator() & 0xFF; // Mask to 8 bits
-            int result = accumulatorValue - registerValue;
+            int borrow = cpu.getcarryFlag() ? 1 : 0;
+            int result = accumulatorValue - registerValue - borrow;
 
             // Set flags
-            cpu.setcarryFlag(calculateCarryForSubtraction(accumulatorValue, registerValue));
-            cpu.setauxiliaryCarryFlag(calculateAuxiliaryCarryForSubtraction(accumulatorValue, registerValue));
+            cpu.setcarryFlag(calculateCarryForSubtraction(accumulatorValue, registerValue, borrow));
+            cpu.setauxiliaryCarryFlag(calculateAuxiliaryCarryForSubtraction(accumulatorValue, registerValue, borrow));
             cpu.setoverflowFlag(calculateOverflowForSubtraction(accumulatorValue, registerValue, result));
 
             // Store result in accumulator
@@ -252,8 +267,8 @@ public class InstructionSet {
             int result = accumulatorValue - 1;
 
             // Set flags
-            cpu.setcarryFlag(calculateCarryForSubtraction(accumulatorValue, 1));
-            cpu.setauxiliaryCarryFlag(calculateAuxiliaryCarryForSubtraction(accumulatorValue, 1));
+            cpu.setcarryFlag(calculateCarryForSubtraction(accumulatorValue, 1, 0));
+            cpu.setauxiliaryCarryFlag(calculateAuxiliaryCarryForSubtraction(accumulatorValue, 1, 0));
             cpu.setoverflowFlag(calculateOverflowForSubtraction(accumulatorValue, 1, result));
 
             // Store result in accumulator
@@ -270,17 +285,17 @@ public class InstructionSet {
         case 0x1E: // DEC R6
         case 0x1F: { // DEC R7
             int registerIndex = opcode - 0x18;
-            int registerValue = memory.readDataByte(registerIndex) & 0xFF; // Mask to 8 bits
+            int registerValue = memory.readDataByte(cpu.getBankBase() + registerIndex) & 0xFF; // Mask to 8 bits
             int resultReg = registerValue - 1;
 			cpu.setAccumulator((byte) resultReg);
 
             // Set flags
-            cpu.setcarryFlag(calculateCarryForSubtraction(registerValue, 1));
-            cpu.setauxiliaryCarryFlag(calculateAuxiliaryCarryForSubtraction(registerValue, 1));
+            cpu.setcarryFlag(calculateCarryForSubtraction(registerValue, 1, 0));
+            cpu.setauxiliaryCarryFlag(calculateAuxiliaryCarryForSubtraction(registerValue, 1, 0));
             cpu.setoverflowFlag(calculateOverflowForSubtraction(registerValue, 1, resultReg));
 
             // Store result back in register
-            memory.writeDataByte(registerIndex, (byte) resultReg);
+            memory.writeDataByte(cpu.getBankBase() + registerIndex, (byte) resultReg);
             cpu.setparityFlag(calculateParity(resultReg));
             break;
         }
@@ -308,7 +323,7 @@ public class InstructionSet {
 		case 0x0E: // INC R6
 		case 0x0F: { // INC R7
 			int registerIndex_INCR = opcode - 0x08;
-			int registerValue_INCR = memory.readDataByte(registerIndex_INCR) & 0xFF; // Mask to 8 bits
+			int registerValue_INCR = memory.readDataByte(cpu.getBankBase() + registerIndex_INCR) & 0xFF; // Mask to 8 bits
 			int resultReg_INCR = registerValue_INCR + 1;
 		
 			// Set flags
@@ -317,7 +332,7 @@ public class InstructionSet {
 			cpu.setoverflowFlag(calculateOverflow(registerValue_INCR, 1, resultReg_INCR));
 		
 			// Store result back in register
-			memory.writeDataByte(registerIndex_INCR, (byte) resultReg_INCR);
+			memory.writeDataByte(cpu.getBankBase() + registerIndex_INCR, (byte) resultReg_INCR);
 			cpu.setparityFlag(calculateParity(resultReg_INCR));
 			break;
 		}
@@ -343,7 +358,7 @@ public class InstructionSet {
         case 0x4E: // ORL A, R6
         case 0x4F: { // ORL A, R7
             int registerIndex_orl1 = opcode - 0x48;
-            int registerValue_orl = memory.readDataByte(registerIndex_orl1) & 0xFF; // Mask to 8 bits
+            int registerValue_orl = memory.readDataByte(cpu.getBankBase() + registerIndex_orl1) & 0xFF; // Mask to 8 bits
             int accumulatorValue_orl1 = cpu.getAccumulator() & 0xFF;
             int result_orl1 = accumulatorValue_orl1 | registerValue_orl;
 
@@ -374,7 +389,7 @@ public class InstructionSet {
         case 0x5E: // ANL A, R6
         case 0x5F: { // ANL A, R7
             int register_index_anl = opcode - 0x58;
-            int register_value_anl = memory.readDataByte(register_index_anl) & 0xFF; // Mask to 8 bits
+            int register_value_anl = memory.readDataByte(cpu.getBankBase() + register_index_anl) & 0xFF; // Mask to 8 bits
             int accumulator_value_anl_rn = cpu.getAccumulator() & 0xFF;
             int result_anl_rn = accumulator_value_anl_rn & register_value_anl;
 
@@ -405,7 +420,7 @@ public class InstructionSet {
 		case 0x6E: // XRL A, R6
 		case 0x6F: { // XRL A, R7
 			int registerIndex_xrl = opcode - 0x68;
-			int registerValue_xrl = memory.readDataByte(registerIndex_xrl) & 0xFF; // Mask to 8 bits
+			int registerValue_xrl = memory.readDataByte(cpu.getBankBase() + registerIndex_xrl) & 0xFF; // Mask to 8 bits
 			int accumulatorValue_xrl = cpu.getAccumulator() & 0xFF;
 			int result_xrl = accumulatorValue_xrl ^ registerValue_xrl;
 		
@@ -420,70 +435,276 @@ public class InstructionSet {
 
         case 0xD2: { // SETB bit (Set a bit in memory, register, flag, or pin)
             int bitAddress = cpu.fetch();
-
-            if (bitAddress < 0x80) { // RAM memory address
-                int byteAddress = bitAddress >> 3;
-                int bitPosition = bitAddress & 0x07;
-                setMemoryBit(byteAddress, bitPosition, false);
-            } else if (bitAddress >= 0x2000 && bitAddress < 0x3000) { // ROM memory address
-                int byteAddress = (bitAddress - 0x2000) >> 3;
-                int bitPosition = bitAddress & 0x07;
-                setMemoryBit(byteAddress, bitPosition, true);
-            } else if (bitAddress == 0xE0 || bitAddress == 0xF0) { // ACC or B register
-                int bitPosition = bitAddress & 0x07;
-                if (bitAddress == 0xE0) {
-                    setRegisterBit(cpu.getAccumulator(), bitPosition, "ACC");
-                } else {
-                    setRegisterBit(cpu.getb_reg(), bitPosition, "B");
-                }
-            } else if (bitAddress == 0xD0) { // Carry flag
-                setFlagBit("C");
-            } else if (bitAddress >= 0xB0 && bitAddress < 0xB8) { // Other flags like OV, AC, P
-                int flagPosition = bitAddress & 0x07;
-                switch (flagPosition) {
-                    case 2: // OV flag
-                        setFlagBit("OV");
-                        break;
-                    case 4: // AC flag
-                        setFlagBit("AC");
-                        break;
-                    case 5: // P flag
-                        setFlagBit("P");
-                        break;
-                    default:
-                        throw new UnsupportedOperationException("Unknown flag bit at address: " + bitAddress);
-                }
-            } else if (bitAddress >= 0x80 && bitAddress <= 0x87) { // Port 0
-                setPinBit(bitAddress);
-            } else if (bitAddress >= 0x90 && bitAddress <= 0x97) { // Port 1
-                setPinBit(bitAddress);
-            } else if (bitAddress >= 0xA0 && bitAddress <= 0xA7) { // Port 2
-                setPinBit(bitAddress);
-            } else if (bitAddress >= 0xB0 && bitAddress <= 0xB7) { // Port 3
-                setPinBit(bitAddress);
-            } else {
-                throw new UnsupportedOperationException("Invalid bit address for SETB: " + Integer.toHexString(bitAddress));
-            }
+            setBitAddress(bitAddress);
             break;
         }
 
-        default:
-            throw new UnsupportedOperationException("Opcode not supported: " + Integer.toHexString(opcode));
+        default: {
+            // opcodes added after the original switch only exist in the handler table
+            int length = OpcodeTable.LENGTH[opcode];
+            int operand1 = length > 1 ? cpu.fetch() : 0;
+            int operand2 = length > 2 ? cpu.fetch() : 0;
+            handlers[opcode].execute(opcode, operand1, operand2);
+        }
     }
 }
 
 
     
 
+    // handler table (ExecutionMode.TABLE)
+    // same semantics as the switch above, register families share one handler per register index
+    private void buildHandlerTable() {
+        Arrays.fill(handlers, (OpcodeHandler) (opcode, operand1, operand2) -> {
+            throw new UnsupportedOperationException("Opcode not supported: " + Integer.toHexString(opcode));
+        });
+
+        handlers[0xE4] = (opcode, operand1, operand2) -> loadAccumulator(0);
+        handlers[0xF4] = (opcode, operand1, operand2) -> loadAccumulator(~cpu.getAccumulator());
+        handlers[0x74] = (opcode, operand1, operand2) -> loadAccumulator(operand1);
+        handlers[0x75] = (opcode, operand1, operand2) -> writeDirect(operand1, operand2);
+        handlers[0x24] = (opcode, operand1, operand2) -> addToAccumulator(operand1);
+        handlers[0x94] = (opcode, operand1, operand2) -> subtractWithBorrow(operand1);
+        handlers[0x04] = (opcode, operand1, operand2) -> addToAccumulator(1);
+        handlers[0x14] = (opcode, operand1, operand2) -> subtractFromAccumulator(1);
+        handlers[0x44] = (opcode, operand1, operand2) -> loadAccumulator((cpu.getAccumulator() & 0xFF) | operand1);
+        handlers[0x54] = (opcode, operand1, operand2) -> loadAccumulator((cpu.getAccumulator() & 0xFF) & operand1);
+        handlers[0x62] = (opcode, operand1, operand2) -> loadAccumulator((cpu.getAccumulator() & 0xFF) ^ operand1);
+        handlers[0xD2] = (opcode, operand1, operand2) -> setBitAddress(operand1);
+        handlers[0xC2] = (opcode, operand1, operand2) -> clearBitAddress(operand1);
+        handlers[0xF5] = (opcode, operand1, operand2) -> writeDirect(operand1, cpu.getAccumulator() & 0xFF);
+        handlers[0xE5] = (opcode, operand1, operand2) -> loadAccumulator(readDirect(operand1));
+        handlers[0xB2] = (opcode, operand1, operand2) -> complementBitAddress(operand1);
+
+        // MOVC reads ROM through Memory.readByte, so ROM read watchpoints see it. @A+PC counts from
+        // the next instruction, which is where the PC already is
+        handlers[0x90] = (opcode, operand1, operand2) -> cpu.setdptr((operand1 << 8) | operand2);
+        handlers[0x93] = (opcode, operand1, operand2) -> loadAccumulator(memory.readByte(((cpu.getAccumulator() & 0xFF) + cpu.getdptr()) & 0xFFFF));
+        handlers[0x83] = (opcode, operand1, operand2) -> loadAccumulator(memory.readByte(((cpu.getAccumulator() & 0xFF) + cpu.getProgramCounter()) & 0xFFFF));
+
+        // direct addressing, MOV direct,direct has the source first
+        handlers[0x85] = (opcode, operand1, operand2) -> writeDirect(operand2, readDirect(operand1));
+        handlers[0x25] = (opcode, operand1, operand2) -> addToAccumulator(readDirect(operand1));
+        handlers[0x35] = (opcode, operand1, operand2) -> addWithCarry(readDirect(operand1));
+        handlers[0x95] = (opcode, operand1, operand2) -> subtractWithBorrow(readDirect(operand1));
+        handlers[0x45] = (opcode, operand1, operand2) -> loadAccumulator((cpu.getAccumulator() & 0xFF) | readDirect(operand1));
+        handlers[0x55] = (opcode, operand1, operand2) -> loadAccumulator((cpu.getAccumulator() & 0xFF) & readDirect(operand1));
+        handlers[0x65] = (opcode, operand1, operand2) -> loadAccumulator((cpu.getAccumulator() & 0xFF) ^ readDirect(operand1));
+        handlers[0x42] = (opcode, operand1, operand2) -> writeDirect(operand1, readDirect(operand1) | (cpu.getAccumulator() & 0xFF));
+        handlers[0x52] = (opcode, operand1, operand2) -> writeDirect(operand1, readDirect(operand1) & (cpu.getAccumulator() & 0xFF));
+        handlers[0x43] = (opcode, operand1, operand2) -> writeDirect(operand1, readDirect(operand1) | operand2);
+        handlers[0x53] = (opcode, operand1, operand2) -> writeDirect(operand1, readDirect(operand1) & operand2);
+        handlers[0x63] = (opcode, operand1, operand2) -> writeDirect(operand1, readDirect(operand1) ^ operand2);
+        // INC/DEC direct change no flags, the byte may be PSW itself
+        handlers[0x05] = (opcode, operand1, operand2) -> writeDirect(operand1, (readDirect(operand1) + 1) & 0xFF);
+        handlers[0x15] = (opcode, operand1, operand2) -> writeDirect(operand1, (readDirect(operand1) - 1) & 0xFF);
+        handlers[0xC5] = (opcode, operand1, operand2) -> {
+            int value = readDirect(operand1);
+            writeDirect(operand1, cpu.getAccumulator() & 0xFF);
+            loadAccumulator(value);
+        };
+
+        // control flow, the PC already points past the instruction when a handler runs
+        handlers[0x80] = (opcode, operand1, operand2) -> jump(opcode, relative(operand1));
+        handlers[0x02] = (opcode, operand1, operand2) -> jump(opcode, (operand1 << 8) | operand2);
+        handlers[0x12] = (opcode, operand1, operand2) -> call((operand1 << 8) | operand2);
+        handlers[0x22] = (opcode, operand1, operand2) -> ret();
+        handlers[0x32] = (opcode, operand1, operand2) -> {
+            ret();
+            cpu.getInterrupts().returned();
+        };
+        handlers[0x60] = (opcode, operand1, operand2) -> jumpIf(opcode, cpu.getAccumulator() == 0, operand1);
+        handlers[0x70] = (opcode, operand1, operand2) -> jumpIf(opcode, cpu.getAccumulator() != 0, operand1);
+        handlers[0x40] = (opcode, operand1, operand2) -> jumpIf(opcode, cpu.getcarryFlag(), operand1);
+        handlers[0x50] = (opcode, operand1, operand2) -> jumpIf(opcode, !cpu.getcarryFlag(), operand1);
+        handlers[0x20] = (opcode, operand1, operand2) -> jumpIf(opcode, memory.readBit(operand1), operand2);
+        handlers[0x30] = (opcode, operand1, operand2) -> jumpIf(opcode, !memory.readBit(operand1), operand2);
+        handlers[0xD5] = (opcode, operand1, operand2) -> {
+            int value = (readDirect(operand1) - 1) & 0xFF;
+            writeDirect(operand1, value);
+            if (value != 0) {
+                cpu.setProgramCounter(relative(operand2));
+            }
+        };
+        handlers[0xB4] = (opcode, operand1, operand2) -> compareAndJump(cpu.getAccumulator() & 0xFF, operand1, operand2);
+        handlers[0xB5] = (opcode, operand1, operand2) -> compareAndJump(cpu.getAccumulator() & 0xFF, readDirect(operand1), operand2);
+        handlers[0xC0] = (opcode, operand1, operand2) -> push(readDirect(operand1));
+        handlers[0xD0] = (opcode, operand1, operand2) -> writeDirect(operand1, pop());
+        handlers[0xC3] = (opcode, operand1, operand2) -> cpu.setcarryFlag(false);
+        handlers[0xD3] = (opcode, operand1, operand2) -> cpu.setcarryFlag(true);
+        handlers[0xB3] = (opcode, operand1, operand2) -> cpu.setcarryFlag(!cpu.getcarryFlag());
+        for (int page = 0; page < 8; page++) {
+            handlers[0x01 + 32 * page] = (opcode, operand1, operand2) -> jump(opcode, absolute(opcode, operand1));
+            handlers[0x11 + 32 * page] = (opcode, operand1, operand2) -> call(absolute(opcode, operand1));
+        }
+
+        // indirect addressing through R0/R1, reaches the upper 128 bytes of RAM
+        for (int i = 0; i < 2; i++) {
+            final int reg = i;
+            handlers[0xE6 + i] = (opcode, operand1, operand2) -> loadAccumulator(memory.readIndirect(readRegister(reg)));
+            handlers[0xF6 + i] = (opcode, operand1, operand2) -> memory.writeIndirect(readRegister(reg), cpu.getAccumulator() & 0xFF);
+            handlers[0x76 + i] = (opcode, operand1, operand2) -> memory.writeIndirect(readRegister(reg), operand1);
+            handlers[0x86 + i] = (opcode, operand1, operand2) -> writeDirect(operand1, memory.readIndirect(readRegister(reg)));
+            handlers[0xA6 + i] = (opcode, operand1, operand2) -> memory.writeIndirect(readRegister(reg), readDirect(operand1));
+            handlers[0xB6 + i] = (opcode, operand1, operand2) -> compareAndJump(memory.readIndirect(readRegister(reg)), operand1, operand2);
+        }
+
+        for (int r = 0; r < 8; r++) {
+            final int reg = r;
+            handlers[0xE8 + r] = (opcode, operand1, operand2) -> loadAccumulator(readRegister(reg));
+            handlers[0xF8 + r] = (opcode, operand1, operand2) -> writeRegister(reg, cpu.getAccumulator());
+            handlers[0x78 + r] = (opcode, operand1, operand2) -> movRegisterImmediate(reg, operand1);
+            handlers[0x28 + r] = (opcode, operand1, operand2) -> addToAccumulator(readRegister(reg));
+            handlers[0x98 + r] = (opcode, operand1, operand2) -> subtractWithBorrow(readRegister(reg));
+            handlers[0x08 + r] = (opcode, operand1, operand2) -> incrementRegister(reg);
+            handlers[0x18 + r] = (opcode, operand1, operand2) -> decrementRegister(reg);
+            handlers[0x48 + r] = (opcode, operand1, operand2) -> loadAccumulator((cpu.getAccumulator() & 0xFF) | readRegister(reg));
+            handlers[0x58 + r] = (opcode, operand1, operand2) -> loadAccumulator((cpu.getAccumulator() & 0xFF) & readRegister(reg));
+            handlers[0x68 + r] = (opcode, operand1, operand2) -> loadAccumulator((cpu.getAccumulator() & 0xFF) ^ readRegister(reg));
+            handlers[0x88 + r] = (opcode, operand1, operand2) -> writeDirect(operand1, readRegister(reg));
+            handlers[0xA8 + r] = (opcode, operand1, operand2) -> writeRegister(reg, (byte) readDirect(operand1));
+            handlers[0xB8 + r] = (opcode, operand1, operand2) -> compareAndJump(readRegister(reg), operand1, operand2);
+            handlers[0xD8 + r] = (opcode, operand1, operand2) -> {
+                int value = (readRegister(reg) - 1) & 0xFF;
+                writeRegister(reg, (byte) value);
+                if (value != 0) {
+                    cpu.setProgramCounter(relative(operand1));
+                }
+            };
+        }
+    }
+
+    // rel operands count from the next instruction, which is where the PC already is
+    private int relative(int offset) {
+        return (cpu.getProgramCounter() + (byte) offset) & 0xFFFF;
+    }
+
+    // AJMP/ACALL: same 2K block as the next instruction, bits 10..8 from the opcode
+    private int absolute(int opcode, int low) {
+        return (cpu.getProgramCounter() & 0xF800) | ((opcode & 0xE0) << 3) | low;
+    }
+
+    // an instruction that jumps to itself (SJMP $, JNB bit,$...) can only leave once something
+    // outside the program changes, the CPU flags it so Machine can skip to the next scheduled event
+    private void jump(int opcode, int target) {
+        jump(opcode, target, false);
+    }
+
+    private void jump(int opcode, int target, boolean tests) {
+        if (target == cpu.getProgramCounter() - OpcodeTable.LENGTH[opcode]) {
+            cpu.enterIdleLoop(OpcodeTable.CYCLES[opcode], tests);
+        }
+        cpu.setProgramCounter(target);
+    }
+
+    private void jumpIf(int opcode, boolean condition, int offset) {
+        if (condition) {
+            jump(opcode, relative(offset), true);
+        }
+    }
+
+    // CJNE: CY = first < second, jumps when they differ
+    private void compareAndJump(int first, int second, int offset) {
+        cpu.setcarryFlag(first < second);
+        if (first != second) {
+            cpu.setProgramCounter(relative(offset));
+        }
+    }
+
+    // the stack grows upwards through indirect RAM, SP points at the last byte pushed
+    private void push(int value) {
+        int sp = (memory.readSfr(Memory.SP) + 1) & 0xFF;
+        memory.writeSfr(Memory.SP, sp);
+        memory.writeIndirect(sp, value);
+    }
+
+    private int pop() {
+        int sp = memory.readSfr(Memory.SP);
+        int value = memory.readIndirect(sp);
+        memory.writeSfr(Memory.SP, (sp - 1) & 0xFF);
+        return value;
+    }
+
+    // return address low byte first, so it sits below the high byte. also the CPU's interrupt LCALL
+    void call(int target) {
+        int returnAddress = cpu.getProgramCounter();
+        push(returnAddress & 0xFF);
+        push(returnAddress >>> 8);
+        cpu.setProgramCounter(target);
+    }
+
+    private void ret() {
+        int high = pop();
+        int low = pop();
+        cpu.setProgramCounter((high << 8) | low);
+    }
+
+    // Rn lives at bank base + n, the CPU keeps the base in step with RS0/RS1
+    private int readRegister(int reg) {
+        return memory.readDataByte(cpu.getBankBase() + reg);
+    }
+
+    private void writeRegister(int reg, byte value) {
+        memory.writeDataByte(cpu.getBankBase() + reg, value);
+    }
+
+    // MOV A,x / CLR / CPL / logic ops: ACC = value, parity from value
+    private void loadAccumulator(int value) {
+        cpu.setAccumulator((byte) value);
+        cpu.setParityOf(value);
+    }
+
+    private void movRegisterImmediate(int reg, int value) {
+        writeRegister(reg, (byte) value);
+        cpu.setParityOf(value);
+    }
+
+
+    // ADD A,x and INC A, result and CY/AC/OV/P come from one AluFlags entry
+    private void addToAccumulator(int value) {
+        int entry = AluFlags.ADD[AluFlags.index(cpu.getAccumulator() & 0xFF, value, 0)];
+        cpu.setAccumulator((byte) entry);
+        cpu.setAluFlags(entry >>> 8);
+    }
+
+    // ADDC A,x
+    private void addWithCarry(int value) {
+        int entry = AluFlags.ADD[AluFlags.index(cpu.getAccumulator() & 0xFF, value, cpu.getcarryFlag() ? 1 : 0)];
+        cpu.setAccumulator((byte) entry);
+        cpu.setAluFlags(entry >>> 8);
+    }
+
+    // SUBB A,x, CY is the borrow in
+    private void subtractWithBorrow(int value) {
+        int entry = AluFlags.SUB[AluFlags.index(cpu.getAccumulator() & 0xFF, value, cpu.getcarryFlag() ? 1 : 0)];
+        cpu.setAccumulator((byte) entry);
+        cpu.setAluFlags(entry >>> 8);
+    }
+
+    // DEC A
+    private void subtractFromAccumulator(int value) {
+        int entry = AluFlags.SUB[AluFlags.index(cpu.getAccumulator() & 0xFF, value, 0)];
+        cpu.setAccumulator((byte) entry);
+        cpu.setAluFlags(entry >>> 8);
+    }
+
+    private void incrementRegister(int reg) {
+        int entry = AluFlags.ADD[AluFlags.index(readRegister(reg), 1, 0)];
+        writeRegister(reg, (byte) entry);
+        cpu.setAluFlags(entry >>> 8);
+    }
+
+    // DEC Rn also leaves the result in ACC, same as the reference switch
+    private void decrementRegister(int reg) {
+        int entry = AluFlags.SUB[AluFlags.index(readRegister(reg), 1, 0)];
+        cpu.setAccumulator((byte) entry);
+        writeRegister(reg, (byte) entry);
+        cpu.setAluFlags(entry >>> 8);
+    }
+
     //helper function for partity flag
     private boolean calculateParity(int value) {
-        int count = 0;
-    
-        for (int i = 0; i < 8; i++) {
-            count += (value >> i) & 1;
-        }
-    
-        return (count % 2 == 0);
+        return AluFlags.PARITY[value & 0xFF];
     }
   
   // Updated helper function for carry flag
@@ -497,9 +718,9 @@ private boolean calculateAuxiliaryCarry(int operand1, int operand2) {
     int lowerNibbleSum = lowerNibble1 + lowerNibble2;
     
     // Debugging outputs
-    System.out.println("Operand1 Lower Nibble: " + Integer.toHexString(lowerNibble1));
-    System.out.println("Operand2 Lower Nibble: " + Integer.toHexString(lowerNibble2));
-    System.out.println("Lower Nibble Sum: " + Integer.toHexString(lowerNibbleSum));
+    if (Trace.DEBUG_ENABLED) {
+        Trace.event(Trace.DEBUG, Trace.AUX_CARRY, lowerNibble1, lowerNibble2, lowerNibbleSum, 0);
+    }
 
     return (lowerNibbleSum >= 0x0f);
 }
@@ -515,13 +736,13 @@ private boolean calculateOverflow(int operand1, int operand2, int result) {
 }
 
 // Helper function to calculate carry flag for subtraction
-private boolean calculateCarryForSubtraction(int operand1, int operand2) {
-    return operand1 < operand2; // Carry (borrow) occurs if operand1 is less than operand2
+private boolean calculateCarryForSubtraction(int operand1, int operand2, int borrow) {
+    return operand1 < operand2 + borrow; // Carry (borrow) occurs if operand1 is less than operand2 plus the borrow in
 }
 
 // Helper function to calculate auxiliary carry flag for subtraction
-private boolean calculateAuxiliaryCarryForSubtraction(int operand1, int operand2) {
-    return (operand1 & 0x0F) < (operand2 & 0x0F); // Borrow in lower 4 bits
+private boolean calculateAuxiliaryCarryForSubtraction(int operand1, int operand2, int borrow) {
+    return (operand1 & 0x0F) < (operand2 & 0x0F) + borrow; // Borrow in lower 4 bits
 }
 
 // Helper function to calculate overflow flag for subtraction
@@ -537,242 +758,41 @@ private boolean calculateOverflowForSubtraction(int operand1, int operand2, int
 
   
   
-    // Helper function to set a specific bit at a given position
-    private int setBit(int value, int bitPosition) {
-        return value | (1 << bitPosition);
-    }
-
-    // Helper function to set a specific bit in memory (RAM or ROM)
-    private void setMemoryBit(int address, int bitPosition, boolean isROM) {
-        if (isROM) {
-            // For ROM memory,this is read-only 
-            throw new UnsupportedOperationException("Cannot set bit in ROM memory.");
-        } else {
-            // For RAM memory
-            int value = memory.readDataByte(address);
-            value = setBit(value, bitPosition);
-            memory.writeByte(address, (byte) value);
-        }
-    }
-
-    // Helper function to set a specific bit in a register (ACC or B)
-    private void setRegisterBit(byte regValue, int bitPosition, String registerName) {
-        int updatedValue = setBit(regValue, bitPosition);
-        if (registerName.equals("ACC")) {
-            cpu.setAccumulator((byte) updatedValue);
-        } else if (registerName.equals("B")) {
-            cpu.setb_reg((byte) updatedValue);
-        }
-    }
-
-    // Helper function to set a specific bit in a flag (Carry, Overflow, etc.)
-    private void setFlagBit(String flagName) {
-        switch (flagName) {
-            case "C":
-                cpu.setcarryFlag(true);
-                break;
-            case "OV":
-                cpu.setoverflowFlag(true);
-                break;
-            case "P":
-                cpu.setparityFlag(true);
-                break;
-            case "AC":
-                cpu.setauxiliaryCarryFlag(true);
-                break;
-            default:
-                throw new IllegalArgumentException("Unknown flag: " + flagName);
+    // SETB bit: RAM 0x20-0x2F for bits below 0x80, otherwise a bit of the SFR at (bit & 0xF8),
+    // the ports, ACC, B and PSW included (PSW.7 0xD7 is the carry)
+    private void setBitAddress(int bitAddress) {
+        memory.writeBit(bitAddress, true);
+        if (Trace.DEBUG_ENABLED && bitAddress >= 0x80 && bitAddress <= 0xB7 && (bitAddress & 0x08) == 0) {
+            Trace.event(Trace.DEBUG, Trace.PIN_HIGH, bitAddress, 0, 0, 0);
         }
     }
 
 
    public void pinReset() {
-    // Port 0 (P0.0 - P0.7)
-    pins.p0_0.setLow();
-    pins.p0_1.setLow();
-    pins.p0_2.setLow();
-    pins.p0_3.setLow();
-    pins.p0_4.setLow();
-    pins.p0_5.setLow();
-    pins.p0_6.setLow();
-    pins.p0_7.setLow();
-
-    // Port 1 (P1.0 - P1.7)
-    pins.p1_0.setLow();
-    pins.p1_1.setLow();
-    pins.p1_2.setLow();
-    pins.p1_3.setLow();
-    pins.p1_4.setLow();
-    pins.p1_5.setLow();
-    pins.p1_6.setLow();
-    pins.p1_7.setLow();
-
-    // Port 2 (P2.0 - P2.7)
-    pins.p2_0.setLow();
-    pins.p2_1.setLow();
-    pins.p2_2.setLow();
-    pins.p2_3.setLow();
-    pins.p2_4.setLow();
-    pins.p2_5.setLow();
-    pins.p2_6.setLow();
-    pins.p2_7.setLow();
-
-    // Port 3 (P3.0 - P3.7)
-    pins.p3_0.setLow();
-    pins.p3_1.setLow();
-    pins.p3_2.setLow();
-    pins.p3_3.setLow();
-    pins.p3_4.setLow();
-    pins.p3_5.setLow();
-    pins.p3_6.setLow();
-    pins.p3_7.setLow();
-
-    System.out.println("All pins have been reset to LOW.");
+    pins.resetPorts(); // P0..P3 latches to 0xFF
+
+    if (Trace.DEBUG_ENABLED) {
+        Trace.event(Trace.DEBUG, Trace.PINS_RESET, 0, 0, 0, 0);
+    }
 }
 
    
-   //helper function to set pins in a port 
-   private void setPinBit(int pinAddress) { 
-    switch (pinAddress) {
-        // Port 0 (P0.0 - P0.7)
-        case 0x80:  // P0.0
-            pins.p0_0.setHigh();
-            System.out.println("P0.0 set HIGH");
-            break;
-        case 0x81:  // P0.1
-            pins.p0_1.setHigh();
-            System.out.println("P0.1 set HIGH");
-            break;
-        case 0x82:  // P0.2
-            pins.p0_2.setHigh();
-            System.out.println("P0.2 set HIGH");
-            break;
-        case 0x83:  // P0.3
-            pins.p0_3.setHigh();
-            System.out.println("P0.3 set HIGH");
-            break;
-        case 0x84:  // P0.4
-            pins.p0_4.setHigh();
-            System.out.println("P0.4 set HIGH");
-            break;
-        case 0x85:  // P0.5
-            pins.p0_5.setHigh();
-            System.out.println("P0.5 set HIGH");
-            break;
-        case 0x86:  // P0.6
-            pins.p0_6.setHigh();
-            System.out.println("P0.6 set HIGH");
-            break;
-        case 0x87:  // P0.7
-            pins.p0_7.setHigh();
-            System.out.println("P0.7 set HIGH");
-            break;
-
-        // Port 1 (P1.0 - P1.7)
-        case 0x90:  // P1.0
-            pins.p1_0.setHigh();
-            System.out.println("P1.0 set HIGH");
-            break;
-        case 0x91:  // P1.1
-            pins.p1_1.setHigh();
-            System.out.println("P1.1 set HIGH");
-            break;
-        case 0x92:  // P1.2
-            pins.p1_2.setHigh();
-            System.out.println("P1.2 set HIGH");
-            break;
-        case 0x93:  // P1.3
-            pins.p1_3.setHigh();
-            System.out.println("P1.3 set HIGH");
-            break;
-        case 0x94:  // P1.4
-            pins.p1_4.setHigh();
-            System.out.println("P1.4 set HIGH");
-            break;
-        case 0x95:  // P1.5
-            pins.p1_5.setHigh();
-            System.out.println("P1.5 set HIGH");
-            break;
-        case 0x96:  // P1.6
-            pins.p1_6.setHigh();
-            System.out.println("P1.6 set HIGH");
-            break;
-        case 0x97:  // P1.7
-            pins.p1_7.setHigh();
-            System.out.println("P1.7 set HIGH");
-            break;
+    // CLR bit, same mapping as SETB
+    private void clearBitAddress(int bitAddress) {
+        memory.writeBit(bitAddress, false);
+    }
 
-        // Port 2 (P2.0 - P2.7)
-        case 0xA0:  // P2.0
-            pins.p2_0.setHigh();
-            System.out.println("P2.0 set HIGH");
-            break;
-        case 0xA1:  // P2.1
-            pins.p2_1.setHigh();
-            System.out.println("P2.1 set HIGH");
-            break;
-        case 0xA2:  // P2.2
-            pins.p2_2.setHigh();
-            System.out.println("P2.2 set HIGH");
-            break;
-        case 0xA3:  // P2.3
-            pins.p2_3.setHigh();
-            System.out.println("P2.3 set HIGH");
-            break;
-        case 0xA4:  // P2.4
-            pins.p2_4.setHigh();
-            System.out.println("P2.4 set HIGH");
-            break;
-        case 0xA5:  // P2.5
-            pins.p2_5.setHigh();
-            System.out.println("P2.5 set HIGH");
-            break;
-        case 0xA6:  // P2.6
-            pins.p2_6.setHigh();
-            System.out.println("P2.6 set HIGH");
-            break;
-        case 0xA7:  // P2.7
-            pins.p2_7.setHigh();
-            System.out.println("P2.7 set HIGH");
-            break;
+    private void complementBitAddress(int bitAddress) {
+        memory.writeBit(bitAddress, !memory.readBit(bitAddress));
+    }
 
-        // Port 3 (P3.0 - P3.7)
-        case 0xB0:  // P3.0
-            pins.p3_0.setHigh();
-            System.out.println("P3.0 set HIGH");
-            break;
-        case 0xB1:  // P3.1
-            pins.p3_1.setHigh();
-            System.out.println("P3.1 set HIGH");
-            break;
-        case 0xB2:  // P3.2
-            pins.p3_2.setHigh();
-            System.out.println("P3.2 set HIGH");
-            break;
-        case 0xB3:  // P3.3
-            pins.p3_3.setHigh();
-            System.out.println("P3.3 set HIGH");
-            break;
-        case 0xB4:  // P3.4
-            pins.p3_4.setHigh();
-            System.out.println("P3.4 set HIGH");
-            break;
-        case 0xB5:  // P3.5
-            pins.p3_5.setHigh();
-            System.out.println("P3.5 set HIGH");
-            break;
-        case 0xB6:  // P3.6
-            pins.p3_6.setHigh();
-            System.out.println("P3.6 set HIGH");
-            break;
-        case 0xB7:  // P3.7
-            pins.p3_7.setHigh();
-            System.out.println("P3.7 set HIGH");
-            break;
+    // MOV A,direct / MOV direct,A...: RAM below 0x80, SFRs (through their hooks) above
+    private int readDirect(int address) {
+        return memory.readDirect(address);
+    }
 
-        default:
-            throw new UnsupportedOperationException("Invalid pin address for SETB: " + Integer.toHexString(pinAddress));
-		}
-	}
+    private void writeDirect(int address, int value) {
+        memory.writeDirect(address, value);
+    }
 
 }
@@ -0,0 +1,215 @@
+// interrupt controller: IE 0xA8, IP 0xB8 and the serial flags in SCON 0x98
+// sources in natural priority order, bit n of IE/IP enables / raises source n:
+//   0 INT0  0x03  P3.2, IE0 on a falling edge when IT0 is set, otherwise while the pin is low
+//   1 TF0   0x0B
+//   2 INT1  0x13  P3.3, IE1 / IT1 likewise
+//   3 TF1   0x1B
+//   4 RI|TI 0x23
+// nothing is polled per instruction. whenever a flag, an enable, a priority or the level in service
+// changes, update() works out which sources could be taken right now and hands the CPU one int,
+// which it tests after every instruction. taking an interrupt is a hardware LCALL to the vector
+// (2 machine cycles) and clears IE0/IE1 (edge triggered) or TF0/TF1; RI/TI stay for the handler.
+// a high priority (IP) source interrupts a low priority handler, nothing interrupts a high one.
+// after RETI or a write to IE/IP one more instruction runs before the next interrupt is taken.
+class Interrupts implements SfrHook, PinListener {
+    static final int SCON = 0x98;
+    static final int IE = 0xA8;
+    static final int IP = 0xB8;
+
+    static final int EA = 0x80; // IE: all interrupts
+    private static final int SOURCES = 0x1F;
+    private static final int[] VECTORS = {0x03, 0x0B, 0x13, 0x1B, 0x23};
+
+    // TCON bits of the external interrupts, the timer flags are Timers.TF0/TF1
+    static final int IE1 = 0x08;
+    static final int IT1 = 0x04;
+    static final int IE0 = 0x02;
+    static final int IT0 = 0x01;
+
+    // levels in service
+    private static final int LOW = 0x01;
+    private static final int HIGH = 0x02;
+    // in the request word: nothing to take, but the next boundary has to clear the hold-off
+    static final int HOLD_OFF = 0x100;
+
+    private final CPU cpu;
+    private final Pins pins;
+    private final Timers timers;
+    private final Memory memory;
+    private WriteJournal journal; // null unless reverse execution is enabled
+    private int ie;
+    private int ip;
+    private int scon;
+    private int active; // LOW / HIGH while a handler of that level runs
+    private boolean holdOff;
+
+    Interrupts(CPU cpu, Memory memory, Pins pins, Timers timers) {
+        this.cpu = cpu;
+        this.memory = memory;
+        this.pins = pins;
+        this.timers = timers;
+        memory.setSfrHook(SCON, this);
+        memory.setSfrHook(IE, this);
+        memory.setSfrHook(IP, this);
+        pins.p3_2.addListener(this);
+        pins.p3_3.addListener(this);
+        timers.setInterrupts(this);
+    }
+
+    void reset() {
+        ie = 0;
+        ip = 0;
+        scon = 0;
+        active = 0;
+        holdOff = false;
+        update();
+    }
+
+    void setJournal(WriteJournal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    public int read(int address) {
+        switch (address) {
+            case IE: return ie;
+            case IP: return ip;
+            default: return scon; // SCON
+        }
+    }
+
+    @Override
+    public void write(int address, int value) {
+        if (address != SCON) {
+            record(); // the hold-off, undone after the register itself
+        }
+        memory.journalSfr(address, read(address));
+        switch (address) {
+            case IE: ie = value; holdOff = true; break;
+            case IP: ip = value; holdOff = true; break;
+            default: scon = value; // SCON
+        }
+        update();
+    }
+
+    // INT0/INT1: falling edges set IE0/IE1 in edge mode, levels count directly in level mode
+    @Override
+    public void pinChanged(Pin pin, long time) {
+        if (journal != null && journal.isUndoing()) {
+            update(); // a restored level, not an edge. IE0/IE1 come back from the journal
+            return;
+        }
+        int edgeMode = pin == pins.p3_2 ? IT0 : IT1;
+        if (!pin.isHigh() && (timers.tcon() & edgeMode) != 0) {
+            timers.setTconBits(edgeMode << 1); // IE0 / IE1 sit just above IT0 / IT1
+            return; // TCON changes call update()
+        }
+        update();
+    }
+
+    // the sources asking right now, before IE
+    private int flags() {
+        int tcon = timers.tcon();
+        int flags = 0;
+        if ((tcon & IT0) != 0 ? (tcon & IE0) != 0 : !pins.p3_2.isHigh()) {
+            flags |= 0x01;
+        }
+        if ((tcon & Timers.TF0) != 0) {
+            flags |= 0x02;
+        }
+        if ((tcon & IT1) != 0 ? (tcon & IE1) != 0 : !pins.p3_3.isHigh()) {
+            flags |= 0x04;
+        }
+        if ((tcon & Timers.TF1) != 0) {
+            flags |= 0x08;
+        }
+        if ((scon & 0x03) != 0) {
+            flags |= 0x10;
+        }
+        return flags;
+    }
+
+    // recomputes what the CPU may take at the next instruction boundary
+    void update() {
+        int enabled = (ie & EA) != 0 ? flags() & ie & SOURCES : 0;
+        int takeable;
+        if ((active & HIGH) != 0) {
+            takeable = 0;
+        } else if ((active & LOW) != 0) {
+            takeable = enabled & ip;
+        } else {
+            takeable = enabled;
+        }
+        cpu.setInterruptRequests(takeable | (holdOff ? HOLD_OFF : 0));
+    }
+
+    // true while some interrupt could still end an idle loop
+    boolean canInterrupt() {
+        return (ie & EA) != 0 && (ie & SOURCES) != 0;
+    }
+
+    // called by the CPU between instructions when its request word is not 0, the vector to call
+    // or -1 when only the hold-off had to run out
+    int take(int requests) {
+        record();
+        if (holdOff) {
+            holdOff = false;
+            update();
+            return -1;
+        }
+        int high = requests & ip;
+        int source = Integer.numberOfTrailingZeros(high != 0 ? high : requests);
+        active |= (ip & (1 << source)) != 0 ? HIGH : LOW;
+        switch (source) {
+            case 0:
+                timers.clearTconBits(IE0);
+                break;
+            case 1:
+                timers.clearTconBits(Timers.TF0);
+                break;
+            case 2:
+                timers.clearTconBits(IE1);
+                break;
+            case 3:
+                timers.clearTconBits(Timers.TF1);
+                break;
+            default:
+                break; // RI/TI are cleared by the handler
+        }
+        update();
+        return VECTORS[source];
+    }
+
+    // RETI: the highest level in service ends
+    void returned() {
+        record();
+        active &= (active & HIGH) != 0 ? ~HIGH : ~LOW;
+        holdOff = true;
+        update();
+    }
+
+    private void record() {
+        if (journal != null) {
+            journal.recordInterrupts(active | (holdOff ? 0x04 : 0));
+        }
+    }
+
+    // undo of record()
+    void restoreState(int state) {
+        active = state & (LOW | HIGH);
+        holdOff = (state & 0x04) != 0;
+        update();
+    }
+
+    // IE, IP, SCON, levels in service, for MachineSnapshot
+    byte[] copyState() {
+        return new byte[] {(byte) ie, (byte) ip, (byte) scon, (byte) (active | (holdOff ? 0x04 : 0))};
+    }
+
+    void restoreState(byte[] values) {
+        ie = values[0] & 0xFF;
+        ip = values[1] & 0xFF;
+        scon = values[2] & 0xFF;
+        restoreState(values[3]);
+    }
+}
@@ -0,0 +1,346 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.locks.LockSupport;
+
+// one complete simulated board: memory, pins, CPU and the peripherals wired to it
+// nothing here is static, so any number of machines can live in one JVM
+class Machine {
+    enum StopReason { HALTED, CYCLE_LIMIT, CANCELLED, BREAKPOINT, ERROR }
+
+    // REAL_TIME pacing: compare simulated and wall time every PACE_SLICE_NANOS of simulated time,
+    // sleep in chunks of at most MAX_PARK_NANOS so stop requests stay responsive
+    private static final long PACE_SLICE_NANOS = 1_000_000L;
+    private static final long MAX_PARK_NANOS = 10_000_000L;
+    // further behind than this (debugger pause, GC, slow host) and pacing restarts from now
+    // instead of bursting to catch up
+    private static final long MAX_LAG_NANOS = 100_000_000L;
+
+    private final Memory memory;
+    private final Pins pins;
+    private final CPU cpu;
+    private Netlist netlist = new Netlist();
+    private String error; // message of the exception that stopped the last run
+    private volatile boolean stopRequested; // set from another thread by requestStop(), cleared when run() returns
+    private ClockMode clockMode = ClockMode.FREE_RUN;
+    // totals of the last run(), for the simulated vs wall-clock figures
+    private long lastRunInstructions;
+    private long lastRunMachineCycles;
+    private long lastRunWallNanos;
+    private VcdWriter vcd; // null unless recording
+    private WriteJournal journal; // null unless reverse execution is enabled
+    private Debugger debugger; // created on first use
+    private Profiler profiler; // null unless profiling
+    private Coverage coverage; // null unless collecting coverage
+
+    public Machine() {
+        this(4096, 256); // 4KB ROM, 256B RAM (lower and upper half)
+    }
+
+    public Machine(int codeMemorySize, int dataMemorySize) {
+        this.memory = new Memory(codeMemorySize, dataMemorySize);
+        this.pins = new Pins();
+        this.cpu = new CPU(memory, pins);
+        pins.setClock(cpu::getMachineCycles); // pin change timestamps are in machine cycles
+    }
+
+    // runs until the program parks in an idle loop with nothing scheduled to get it out (SJMP $ at
+    // the end of a program), maxCycles machine cycles, a stop request, an armed breakpoint or
+    // watchpoint (see Debugger) or an error
+    public StopReason run(long maxCycles) {
+        error = null;
+        long startInstructions = cpu.getInstructionCount();
+        long startCycles = cpu.getMachineCycles();
+        long startWall = System.nanoTime();
+        try {
+            if (stopRequested) {
+                return StopReason.CANCELLED; // requested before the run started
+            }
+            if (debugger != null && debugger.isArmed()) {
+                return runDebug(startCycles, maxCycles);
+            }
+            return clockMode == ClockMode.REAL_TIME ? runRealTime(startCycles, maxCycles, startWall) : runFree(startCycles, maxCycles);
+        } catch (RuntimeException e) {
+            error = e.getMessage();
+            return StopReason.ERROR;
+        } finally {
+            stopRequested = false; // never carried over into the next run
+            lastRunWallNanos = System.nanoTime() - startWall;
+            lastRunInstructions = cpu.getInstructionCount() - startInstructions;
+            lastRunMachineCycles = cpu.getMachineCycles() - startCycles;
+        }
+    }
+
+    private StopReason runFree(long startCycles, long maxCycles) {
+        int iterations = 0;
+        while (true) {
+            // the volatile stop flag is only looked at every 1024 iterations
+            if ((++iterations & 0x3FF) == 0 && stopRequested) {
+                return StopReason.CANCELLED;
+            }
+            if (cpu.getMachineCycles() - startCycles >= maxCycles) {
+                return StopReason.CYCLE_LIMIT;
+            }
+            cpu.cycle();
+            if (cpu.isIdle()) {
+                StopReason idle = skipIdleLoop(startCycles, maxCycles);
+                if (idle != null) {
+                    return idle;
+                }
+            }
+        }
+    }
+
+    // one instruction at a time with the debugger checked around each, never paced:
+    // real time makes no sense while stopping at breakpoints
+    private StopReason runDebug(long startCycles, long maxCycles) {
+        debugger.beginRun();
+        boolean first = true; // never stop on the breakpoint the run starts from
+        while (true) {
+            if (stopRequested) {
+                return StopReason.CANCELLED;
+            }
+            int pc = cpu.getProgramCounter();
+            if (cpu.getMachineCycles() - startCycles >= maxCycles) {
+                return StopReason.CYCLE_LIMIT;
+            }
+            if (!first && debugger.shouldBreakAt(pc)) {
+                return StopReason.BREAKPOINT;
+            }
+            first = false;
+            cpu.step();
+            if (debugger.shouldBreakAfter(pc)) {
+                return StopReason.BREAKPOINT;
+            }
+            if (cpu.isIdle()) {
+                if (debugger.hasBreakpoint(pc)) {
+                    cpu.takeIdleLoop(); // spin, the next pass stops on it
+                    continue;
+                }
+                StopReason idle = skipIdleLoop(startCycles, maxCycles);
+                if (idle != null) {
+                    return idle;
+                }
+            }
+        }
+    }
+
+    // deadlines are measured from one origin, so oversleeping in one slice shortens the next
+    // sleep instead of accumulating as drift
+    private StopReason runRealTime(long startCycles, long maxCycles, long startWall) {
+        long originWall = startWall;
+        long originCycles = startCycles;
+        double nextCheck = PACE_SLICE_NANOS;
+        while (true) {
+            if (stopRequested) {
+                return StopReason.CANCELLED;
+            }
+            if (cpu.getMachineCycles() - startCycles >= maxCycles) {
+                return StopReason.CYCLE_LIMIT;
+            }
+            cpu.cycle();
+            if (cpu.isIdle()) {
+                StopReason idle = skipIdleLoop(startCycles, maxCycles);
+                if (idle != null) {
+                    return idle;
+                }
+            }
+
+            double simulated = cpu.machineCyclesToNanos(cpu.getMachineCycles() - originCycles);
+            if (simulated < nextCheck) {
+                continue;
+            }
+            nextCheck = simulated + PACE_SLICE_NANOS;
+            long ahead = (long) simulated - (System.nanoTime() - originWall);
+            if (ahead < -MAX_LAG_NANOS) {
+                originWall = System.nanoTime();
+                originCycles = cpu.getMachineCycles();
+                nextCheck = PACE_SLICE_NANOS;
+                continue;
+            }
+            while (ahead > 0 && !stopRequested) {
+                LockSupport.parkNanos(Math.min(ahead, MAX_PARK_NANOS));
+                ahead = (long) simulated - (System.nanoTime() - originWall);
+            }
+        }
+    }
+
+    // the CPU just jumped to the instruction it was on, so until something outside the program
+    // changes (a scheduled event) every pass does the same thing. the passes before the one that
+    // reaches that event, or up to the cycle limit, are charged in one go instead of being executed.
+    // the pass reaching the event still runs, it sees what a spinning CPU would. null = keep running
+    private StopReason skipIdleLoop(long startCycles, long maxCycles) {
+        boolean tests = cpu.idleLoopTests();
+        int loopCycles = cpu.takeIdleLoop();
+        long next = nextEventCycle();
+        if (next == Long.MAX_VALUE || !tests && !cpu.getInterrupts().canInterrupt()) {
+            return StopReason.HALTED; // nothing will ever get it out
+        }
+        if (journal != null) {
+            return null; // every pass has to be journaled to step back through it
+        }
+        long now = cpu.getMachineCycles();
+        long limit = maxCycles > Long.MAX_VALUE - startCycles ? Long.MAX_VALUE : startCycles + maxCycles;
+        long passes = Math.min((next - now + loopCycles - 1) / loopCycles - 1, (limit - now + loopCycles - 1) / loopCycles);
+        if (passes > 0) {
+            cpu.skipIdlePasses(passes, loopCycles);
+        }
+        return null;
+    }
+
+    // machine cycle of the next scheduled event (timer overflow...), Long.MAX_VALUE when nothing is scheduled
+    long nextEventCycle() {
+        return cpu.getScheduler().nextDue();
+    }
+
+    // asks a running (or not yet started) run() to return CANCELLED, safe from any thread.
+    // the request ends with that run, the machine can run again afterwards
+    public void requestStop() {
+        stopRequested = true;
+    }
+
+    // copy-on-write snapshot of the current state, see MachineSnapshot
+    public MachineSnapshot snapshot() {
+        return MachineSnapshot.take(this);
+    }
+
+    public void restore(MachineSnapshot snapshot) {
+        snapshot.restore(this);
+    }
+
+    // journals every instruction's writes into a ring of `capacity` longs (about one per write
+    // plus two per instruction) so the run can be stepped backwards, see WriteJournal
+    public WriteJournal enableJournal(int capacity) {
+        journal = new WriteJournal(capacity, cpu, memory, pins);
+        cpu.setJournal(journal);
+        memory.setJournal(journal);
+        pins.setJournal(journal);
+        return journal;
+    }
+
+    public void disableJournal() {
+        journal = null;
+        cpu.setJournal(null);
+        memory.setJournal(null);
+        pins.setJournal(null);
+    }
+
+    public WriteJournal getJournal() {
+        return journal;
+    }
+
+    // counts executions and machine cycles per ROM address and per opcode from now on, see Profiler
+    public Profiler enableProfiler() {
+        if (profiler == null) {
+            profiler = new Profiler(memory.getCodeSize());
+            cpu.setProfiler(profiler);
+        }
+        return profiler;
+    }
+
+    public void disableProfiler() {
+        profiler = null;
+        cpu.setProfiler(null);
+    }
+
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
+    // records which ROM bytes get executed from now on, see Coverage
+    public Coverage enableCoverage() {
+        if (coverage == null) {
+            coverage = new Coverage(memory.getCodeSize());
+            cpu.setCoverage(coverage);
+        }
+        return coverage;
+    }
+
+    public void disableCoverage() {
+        coverage = null;
+        cpu.setCoverage(null);
+    }
+
+    public Coverage getCoverage() {
+        return coverage;
+    }
+
+    // breakpoints and watchpoints, free until something is set on it
+    public Debugger debugger() {
+        if (debugger == null) {
+            debugger = new Debugger(cpu, memory);
+        }
+        return debugger;
+    }
+
+    // starts a VCD recording of all port pins, replacing any recording in progress
+    public void recordVcd(Path file) throws IOException {
+        stopVcd();
+        vcd = new VcdWriter(file, pins, cpu.machineCyclesToNanos(1));
+        pins.setPortObserver(vcd);
+    }
+
+    // ends the recording at the current machine cycle and closes the file, no-op when not recording
+    public void stopVcd() throws IOException {
+        if (vcd == null) {
+            return;
+        }
+        VcdWriter writer = vcd;
+        vcd = null;
+        pins.setPortObserver(null);
+        writer.close(cpu.getMachineCycles());
+    }
+
+    public ClockMode getClockMode() {
+        return clockMode;
+    }
+
+    public void setClockMode(ClockMode clockMode) {
+        this.clockMode = clockMode;
+    }
+
+    public long getLastRunInstructions() {
+        return lastRunInstructions;
+    }
+
+    public long getLastRunMachineCycles() {
+        return lastRunMachineCycles;
+    }
+
+    public long getLastRunWallNanos() {
+        return lastRunWallNanos;
+    }
+
+    // simulated million instructions per wall-clock second over the last run
+    public double getLastRunMips() {
+        return lastRunWallNanos == 0 ? 0 : lastRunInstructions * 1e3 / lastRunWallNanos;
+    }
+
+    // simulated time / wall-clock time over the last run, 1.0 is real time
+    public double getLastRunSpeedRatio() {
+        return lastRunWallNanos == 0 ? 0 : cpu.machineCyclesToNanos(lastRunMachineCycles) / lastRunWallNanos;
+    }
+
+    public Memory getMemory() {
+        return memory;
+    }
+
+    public Pins getPins() {
+        return pins;
+    }
+
+    public CPU getCpu() {
+        return cpu;
+    }
+
+    public Netlist getNetlist() {
+        return netlist;
+    }
+
+    public void setNetlist(Netlist netlist) {
+        this.netlist = netlist;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
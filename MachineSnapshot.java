@@ -0,0 +1,230 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// frozen copy of a whole machine: CPU registers, flags and counters, ROM, RAM, SFRs, timers,
+// interrupt state and pin levels
+// ROM is shared copy-on-write with the machine it came from and with every machine restored
+// from it, so taking a snapshot and forking from it costs a RAM copy, not a ROM copy.
+// snapshots are immutable and can seed machines on any number of threads.
+// the netlist is wiring, not state: peripherals attached to a restored machine follow its pins.
+final class MachineSnapshot {
+    private static final int MAGIC = 0x38303531; // "8051"
+    // 1 had no SFR bytes, 2 no timers, 3 no interrupts, 1-4 a flags byte after the PSW, all still readable
+    private static final int VERSION = 5;
+
+    // flag bits of the flags byte in versions 1-4, bit i is PSW bit PSW_BITS[i]
+    private static final int[] PSW_BITS = {AluFlags.CY, AluFlags.AC, CPU.F0_BIT, CPU.RS1_BIT, CPU.RS0_BIT, AluFlags.OV, AluFlags.P};
+
+    private final int pc;
+    private final int dptr;
+    private final byte acc;
+    private final byte b;
+    private final byte psw; // every flag is in it
+    private final long instructionCount;
+    private final long machineCycles;
+    private final long crystalHz;
+    private final byte[] code; // never modified
+    private final byte[] data;
+    private final byte[] sfrs; // the SFRs without a hook, 0x80..0xFF
+    private final byte[] timers; // TCON, TMOD, TL0, TL1, TH0, TH1
+    private final byte[] interrupts; // IE, IP, SCON, levels in service
+    private final int[] ports;
+    private final int otherPins;
+
+    private MachineSnapshot(int pc, int dptr, byte acc, byte b, byte psw, long instructionCount,
+                            long machineCycles, long crystalHz, byte[] code, byte[] data, byte[] sfrs, byte[] timers,
+                            byte[] interrupts, int[] ports, int otherPins) {
+        this.pc = pc;
+        this.dptr = dptr;
+        this.acc = acc;
+        this.b = b;
+        this.psw = psw;
+        this.instructionCount = instructionCount;
+        this.machineCycles = machineCycles;
+        this.crystalHz = crystalHz;
+        this.code = code;
+        this.data = data;
+        this.sfrs = sfrs;
+        this.timers = timers;
+        this.interrupts = interrupts;
+        this.ports = ports;
+        this.otherPins = otherPins;
+    }
+
+    public static MachineSnapshot take(Machine machine) {
+        CPU cpu = machine.getCpu();
+        Memory memory = machine.getMemory();
+        Pins pins = machine.getPins();
+        int[] ports = new int[4];
+        for (int port = 0; port < 4; port++) {
+            ports[port] = pins.readPort(port);
+        }
+        return new MachineSnapshot(cpu.getProgramCounter(), cpu.getdptr(), cpu.getAccumulator(), cpu.getb_reg(),
+                (byte) cpu.getPsw(), cpu.getInstructionCount(), cpu.getMachineCycles(), cpu.getCrystalFrequency(),
+                memory.shareCode(), memory.copyData(), memory.copySfrs(), cpu.getTimers().copyRegisters(),
+                cpu.getInterrupts().copyState(), ports, pins.readOtherPins());
+    }
+
+    // puts the machine back to this point, memory sizes must match
+    // pin listeners (peripherals, VCD) see the pins move to their snapshot levels
+    public void restore(Machine machine) {
+        CPU cpu = machine.getCpu();
+        Memory memory = machine.getMemory();
+        Pins pins = machine.getPins();
+        memory.adoptCode(code);
+        memory.restoreData(data);
+        memory.restoreSfrs(sfrs);
+        cpu.setProgramCounter(pc);
+        cpu.setdptr(dptr);
+        cpu.setAccumulator(acc);
+        cpu.setb_reg(b);
+        cpu.setpsw(psw);
+        cpu.setCrystalFrequency(crystalHz);
+        cpu.restoreCounters(instructionCount, machineCycles);
+        for (int port = 0; port < 4; port++) {
+            pins.writePort(port, ports[port]);
+        }
+        pins.writeOtherPins(otherPins);
+        cpu.getTimers().restoreRegisters(timers); // after the pins, T0/T1 edges must not count
+        cpu.getInterrupts().restoreState(interrupts);
+        if (machine.getJournal() != null) {
+            machine.getJournal().clear(); // stepping back never crosses a restore
+        }
+    }
+
+    // fresh machine in this state, with its own empty netlist
+    public Machine fork() {
+        Machine machine = new Machine(code.length, data.length);
+        restore(machine);
+        return machine;
+    }
+
+    public int getCodeSize() {
+        return code.length;
+    }
+
+    public int getDataSize() {
+        return data.length;
+    }
+
+    // binary form, big endian:
+    //   int magic, short version, short pc, short dptr, byte acc, b, psw
+    //   long instructions, long machine cycles, long crystal Hz, 4 bytes ports, byte other pins
+    //   128 bytes SFRs (version 2 on), 6 bytes TCON TMOD TL0 TL1 TH0 TH1 (version 3 on)
+    //   4 bytes IE IP SCON levels in service (version 4 on)
+    //   int ROM size, int used ROM bytes, bytes; int RAM size, int used RAM bytes, bytes
+    // trailing zero bytes of ROM and RAM are not written
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(pc);
+        out.writeShort(dptr);
+        out.writeByte(acc);
+        out.writeByte(b);
+        out.writeByte(psw);
+        out.writeLong(instructionCount);
+        out.writeLong(machineCycles);
+        out.writeLong(crystalHz);
+        for (int port : ports) {
+            out.writeByte(port);
+        }
+        out.writeByte(otherPins);
+        out.write(sfrs);
+        out.write(timers);
+        out.write(interrupts);
+        writeTrimmed(out, code);
+        writeTrimmed(out, data);
+        out.flush();
+    }
+
+    public static MachineSnapshot read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a machine snapshot");
+        }
+        int version = in.readUnsignedShort();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported snapshot version: " + version);
+        }
+        int pc = in.readUnsignedShort();
+        int dptr = in.readUnsignedShort();
+        byte acc = in.readByte();
+        byte b = in.readByte();
+        byte psw = in.readByte();
+        if (version < 5) {
+            int flags = in.readUnsignedByte(); // the flags again, these were the ones the CPU used
+            int value = psw;
+            for (int i = 0; i < PSW_BITS.length; i++) {
+                value = (flags & (1 << i)) != 0 ? value | PSW_BITS[i] : value & ~PSW_BITS[i];
+            }
+            psw = (byte) value;
+        }
+        long instructionCount = in.readLong();
+        long machineCycles = in.readLong();
+        long crystalHz = in.readLong();
+        int[] ports = new int[4];
+        for (int port = 0; port < 4; port++) {
+            ports[port] = in.readUnsignedByte();
+        }
+        int otherPins = in.readUnsignedByte();
+        byte[] sfrs = new byte[128];
+        if (version >= 2) {
+            in.readFully(sfrs);
+        } else {
+            sfrs[Memory.SP - 0x80] = Memory.SP_RESET;
+        }
+        byte[] timers = new byte[Timers.TH1 - Timers.TCON + 1];
+        if (version >= 3) {
+            in.readFully(timers);
+        }
+        byte[] interrupts = new byte[4];
+        if (version >= 4) {
+            in.readFully(interrupts);
+        }
+        byte[] code = readTrimmed(in);
+        byte[] data = readTrimmed(in);
+        return new MachineSnapshot(pc, dptr, acc, b, psw, instructionCount, machineCycles, crystalHz,
+                code, data, sfrs, timers, interrupts, ports, otherPins);
+    }
+
+    public void save(Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            write(out);
+        }
+    }
+
+    public static MachineSnapshot load(Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            return read(in);
+        }
+    }
+
+    private static void writeTrimmed(DataOutputStream out, byte[] bytes) throws IOException {
+        int used = bytes.length;
+        while (used > 0 && bytes[used - 1] == 0) {
+            used--;
+        }
+        out.writeInt(bytes.length);
+        out.writeInt(used);
+        out.write(bytes, 0, used);
+    }
+
+    private static byte[] readTrimmed(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        int used = in.readInt();
+        if (size < 0 || used < 0 || used > size || size > 0x10000) {
+            throw new IOException("Corrupt snapshot: memory block of " + used + "/" + size + " bytes");
+        }
+        byte[] bytes = new byte[size];
+        in.readFully(bytes, 0, used);
+        return bytes;
+    }
+}
@@ -1,10 +1,37 @@
 import java.lang.*;
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
+// internal data space as the instructions see it:
+//   0x00-0x7F  lower RAM, direct and indirect addressing (bit addressable at 0x20-0x2F)
+//   0x80-0xFF  upper RAM when dataMemory is 256 bytes, indirect addressing only
+//   0x80-0xFF  SFRs, direct addressing only: a plain byte each unless an SfrHook is installed,
+//              ACC, B, PSW, DPTR and the ports are hooked (see CPU)
 public class Memory {
+    static final int SP = 0x81;
+    static final int SP_RESET = 0x07;
+
+    // bit address -> byte address and mask, bits 0x00-0x7F are RAM 0x20-0x2F,
+    // bits 0x80-0xFF are bit y of the SFR at (bit & 0xF8)
+    private static final int[] BIT_BYTE = new int[256];
+    private static final int[] BIT_MASK = new int[256];
+
+    static {
+        for (int bit = 0; bit < 256; bit++) {
+            BIT_BYTE[bit] = bit < 0x80 ? 0x20 + (bit >>> 3) : bit & 0xF8;
+            BIT_MASK[bit] = 1 << (bit & 0x07);
+        }
+    }
+
     private byte[] dataMemory; // default RAM (128)
     private byte[] codeMemory; // default ROM (4096)
+    private final byte[] sfr = new byte[128]; // SFRs without a hook, index address - 0x80
+    private final SfrHook[] sfrHooks = new SfrHook[128];
+    private boolean codeShared; // codeMemory also belongs to a snapshot, copy before writing
+    private WriteJournal journal; // null unless reverse execution is enabled
+    private Debugger watcher; // null unless the debugger has watchpoints armed
+    private CodeWriteListener[] codeWriteListeners = new CodeWriteListener[0]; // caches built from ROM
 
     public Memory(byte codeMemorySize) { // RAM defaults to 128, ROM user-defined
         this.dataMemory = new byte[128];
@@ -23,6 +50,18 @@ public class Memory {
 
     // Read from ROM
     public int readByte(int address) {
+        if (address >= 0 && address < codeMemory.length) {
+            if (watcher != null) {
+                watcher.codeRead(address);
+            }
+            return codeMemory[address] & 0xFF;
+        } else {
+            throw new IllegalArgumentException("Invalid memory access at address: " + address);
+        }
+    }
+
+    // instruction fetch and decoding, same as readByte but never seen by ROM read watchpoints
+    public int fetchByte(int address) {
         if (address >= 0 && address < codeMemory.length) {
             return codeMemory[address] & 0xFF;
         } else {
@@ -33,15 +72,141 @@ public class Memory {
     // Write to ROM
     public void writeByte(int address, byte value) {
         if (address >= 0 && address < codeMemory.length) {
+            if (watcher != null) {
+                watcher.codeWritten(address);
+            }
+            if (codeShared) {
+                unshareCode();
+            }
+            if (journal != null) {
+                journal.recordCode(address, codeMemory[address]);
+            }
             codeMemory[address] = value;
+            if (codeWriteListeners.length != 0) {
+                notifyCodeWrite(address, address + 1);
+            }
         } else {
             throw new IllegalArgumentException("Invalid memory access at address: " + address);
         }
     }
 
+    // bulk copy into ROM, used by the image loaders
+    public void loadCode(int address, ByteBuffer source) {
+        int length = source.remaining();
+        checkCodeRange(address, length);
+        if (codeShared) {
+            unshareCode();
+        }
+        if (journal != null) {
+            for (int i = 0; i < length; i++) {
+                journal.recordCode(address + i, codeMemory[address + i]);
+            }
+        }
+        source.get(codeMemory, address, length);
+        if (codeWriteListeners.length != 0) {
+            notifyCodeWrite(address, address + length);
+        }
+    }
+
+    public void loadCode(int address, byte[] source, int offset, int length) {
+        checkCodeRange(address, length);
+        if (codeShared) {
+            unshareCode();
+        }
+        if (journal != null) {
+            for (int i = 0; i < length; i++) {
+                journal.recordCode(address + i, codeMemory[address + i]);
+            }
+        }
+        System.arraycopy(source, offset, codeMemory, address, length);
+        if (codeWriteListeners.length != 0) {
+            notifyCodeWrite(address, address + length);
+        }
+    }
+
+    private void checkCodeRange(int address, int length) {
+        if (address < 0 || length < 0 || address + length > codeMemory.length) {
+            throw new IllegalArgumentException("Image does not fit in ROM: " + length + " bytes at address " + address);
+        }
+    }
+
+    // copy-on-write hand-out of ROM for snapshots: the caller must not modify the array,
+    // and this memory copies it before its own next write
+    byte[] shareCode() {
+        codeShared = true;
+        return codeMemory;
+    }
+
+    // adopts a snapshot's ROM without copying, the first write makes a private copy
+    void adoptCode(byte[] code) {
+        if (code.length != codeMemory.length) {
+            throw new IllegalArgumentException("ROM size mismatch: " + code.length + " bytes, expected " + codeMemory.length);
+        }
+        if (code == codeMemory) {
+            return;
+        }
+        codeMemory = code;
+        codeShared = true;
+        if (codeWriteListeners.length != 0) {
+            notifyCodeWrite(0, codeMemory.length);
+        }
+    }
+
+    private void unshareCode() {
+        codeMemory = codeMemory.clone();
+        codeShared = false;
+    }
+
+    byte[] copyData() {
+        return dataMemory.clone();
+    }
+
+    void restoreData(byte[] data) {
+        if (data.length != dataMemory.length) {
+            throw new IllegalArgumentException("RAM size mismatch: " + data.length + " bytes, expected " + dataMemory.length);
+        }
+        System.arraycopy(data, 0, dataMemory, 0, data.length);
+    }
+
+    void setJournal(WriteJournal journal) {
+        this.journal = journal;
+    }
+
+    void setWatcher(Debugger watcher) {
+        this.watcher = watcher;
+    }
+
+    Debugger getWatcher() {
+        return watcher;
+    }
+
+    public int getCodeSize() {
+        return codeMemory.length;
+    }
+
+    public int getDataSize() {
+        return dataMemory.length;
+    }
+
+    // anything that caches decoded ROM registers here to be told about writes to code memory
+    public void addCodeWriteListener(CodeWriteListener listener) {
+        CodeWriteListener[] updated = Arrays.copyOf(codeWriteListeners, codeWriteListeners.length + 1);
+        updated[codeWriteListeners.length] = listener;
+        codeWriteListeners = updated;
+    }
+
+    private void notifyCodeWrite(int from, int to) {
+        for (CodeWriteListener listener : codeWriteListeners) {
+            listener.codeWritten(from, to);
+        }
+    }
+
     // Read from RAM
     public int readDataByte(int address) {
         if (address >= 0 && address < dataMemory.length) {
+            if (watcher != null) {
+                watcher.dataRead(address);
+            }
             return dataMemory[address] & 0xFF;
         } else {
             throw new IllegalArgumentException("Invalid memory access at address: " + address);
@@ -51,12 +216,120 @@ public class Memory {
     // Write to RAM
     public void writeDataByte(int address, byte value) {
         if (address >= 0 && address < dataMemory.length) {
+            if (watcher != null) {
+                watcher.dataWritten(address);
+            }
+            if (journal != null) {
+                journal.recordRam(address, dataMemory[address]);
+            }
             dataMemory[address] = value;
         } else {
             throw new IllegalArgumentException("Invalid memory access at address: " + address);
         }
     }
 
+    // direct addressing (MOV A,direct...): RAM below 0x80, SFRs above
+    public int readDirect(int address) {
+        if (address < 0x80) {
+            return readDataByte(address);
+        }
+        return readSfr(address);
+    }
+
+    public void writeDirect(int address, int value) {
+        if (address < 0x80) {
+            writeDataByte(address, (byte) value);
+        } else {
+            writeSfr(address, value);
+        }
+    }
+
+    // indirect addressing (@R0, @R1): the whole RAM, upper half included
+    public int readIndirect(int address) {
+        return readDataByte(address);
+    }
+
+    public void writeIndirect(int address, int value) {
+        writeDataByte(address, (byte) value);
+    }
+
+    public int readSfr(int address) {
+        if (watcher != null) {
+            watcher.sfrRead(address);
+        }
+        SfrHook hook = sfrHooks[address - 0x80];
+        return hook != null ? hook.read(address) : sfr[address - 0x80] & 0xFF;
+    }
+
+    public void writeSfr(int address, int value) {
+        if (watcher != null) {
+            watcher.sfrWritten(address);
+        }
+        int index = address - 0x80;
+        SfrHook hook = sfrHooks[index];
+        if (hook != null) {
+            hook.write(address, value & 0xFF);
+            return;
+        }
+        if (journal != null) {
+            journal.recordSfr(address, sfr[index]);
+        }
+        sfr[index] = (byte) value;
+    }
+
+    // undo of an SFR write by the journal, hooked registers through SfrHook.restore
+    void restoreSfr(int address, int value) {
+        int index = address - 0x80;
+        SfrHook hook = sfrHooks[index];
+        if (hook != null) {
+            hook.restore(address, value & 0xFF);
+        } else {
+            sfr[index] = (byte) value;
+        }
+    }
+
+    // for hook owners whose registers the journal should take back like plain SFRs, undo puts
+    // oldValue back through SfrHook.restore
+    void journalSfr(int address, int oldValue) {
+        if (journal != null) {
+            journal.recordSfr(address, oldValue);
+        }
+    }
+
+    // hooked registers are read and written through hook instead of the SFR byte, null unhooks
+    public void setSfrHook(int address, SfrHook hook) {
+        sfrHooks[address - 0x80] = hook;
+    }
+
+    // SETB / CLR / bit tests, one table lookup to find the byte and the mask
+    public boolean readBit(int bit) {
+        return (readDirect(BIT_BYTE[bit]) & BIT_MASK[bit]) != 0;
+    }
+
+    public void writeBit(int bit, boolean value) {
+        int address = BIT_BYTE[bit];
+        int old = readDirect(address);
+        writeDirect(address, value ? old | BIT_MASK[bit] : old & ~BIT_MASK[bit]);
+    }
+
+    static int bitByteAddress(int bit) {
+        return BIT_BYTE[bit];
+    }
+
+    // power-on values of the plain SFRs, hooked ones are reset by their owners
+    void resetSfrs() {
+        Arrays.fill(sfr, (byte) 0);
+        sfr[SP - 0x80] = SP_RESET;
+    }
+
+    byte[] copySfrs() {
+        return sfr.clone();
+    }
+
+    void restoreSfrs(byte[] values) {
+        System.arraycopy(values, 0, sfr, 0, sfr.length);
+    }
+
     // Display function for RAM
     public void ramDisplay(int address) {
         if (address >= 0 && address < dataMemory.length) {
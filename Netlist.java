@@ -0,0 +1,118 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// the peripherals wired to one machine's pins
+// text format, one peripheral per line, '#' starts a comment:
+//   led <color> <anode> <cathode>
+//   resistor <ohms> <pin1> <pin2>
+//   npn <base> <collector> <emitter>
+//   pnp <base> <collector> <emitter>
+//   ssd <en> <a> <b> <c> <d> <e> <f> <g>
+// pin names as in Pins (p1_0, P1_0 or P1.0)
+class Netlist {
+    final ArrayList<LED> leds = new ArrayList<>();
+    final ArrayList<Resistor> resistors = new ArrayList<>();
+    final ArrayList<npn> npnTransistors = new ArrayList<>();
+    final ArrayList<pnp> pnpTransistors = new ArrayList<>();
+    final ArrayList<seven_seg_display> sevenSegDisplays = new ArrayList<>();
+
+    public static Netlist load(Path file, Pins pins) throws IOException {
+        Netlist netlist = new Netlist();
+        List<String> lines = Files.readAllLines(file);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            try {
+                netlist.add(line.split("\\s+"), pins);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(file + ":" + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return netlist;
+    }
+
+    private void add(String[] parts, Pins pins) {
+        switch (parts[0].toLowerCase()) {
+            case "led": {
+                expect(parts, 4);
+                LED led = new LED(parts[1]);
+                led.connect(pins.getPin(parts[2]), pins.getPin(parts[3]));
+                leds.add(led);
+                break;
+            }
+            case "resistor": {
+                expect(parts, 4);
+                Resistor resistor = new Resistor(Double.parseDouble(parts[1]));
+                resistor.connect(pins.getPin(parts[2]), pins.getPin(parts[3]));
+                resistors.add(resistor);
+                break;
+            }
+            case "npn": {
+                expect(parts, 4);
+                npn transistor = new npn(npnTransistors.size() + 1);
+                transistor.connect(pins.getPin(parts[1]), pins.getPin(parts[2]), pins.getPin(parts[3]));
+                npnTransistors.add(transistor);
+                break;
+            }
+            case "pnp": {
+                expect(parts, 4);
+                pnp transistor = new pnp(pnpTransistors.size() + 1);
+                transistor.connect(pins.getPin(parts[1]), pins.getPin(parts[2]), pins.getPin(parts[3]));
+                pnpTransistors.add(transistor);
+                break;
+            }
+            case "ssd": {
+                expect(parts, 9);
+                seven_seg_display ssd = new seven_seg_display(sevenSegDisplays.size() + 1);
+                Pin[] ssdPins = new Pin[8];
+                for (int i = 0; i < 8; i++) {
+                    ssdPins[i] = pins.getPin(parts[i + 1]);
+                }
+                ssd.connect(ssdPins);
+                sevenSegDisplays.add(ssd);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown peripheral: " + parts[0]);
+        }
+    }
+
+    private static void expect(String[] parts, int count) {
+        if (parts.length != count) {
+            throw new IllegalArgumentException(parts[0] + " expects " + (count - 1) + " arguments");
+        }
+    }
+
+    // removed peripherals stop listening to their pins
+    public void clear() {
+        for (EventPeripheral peripheral : all()) {
+            peripheral.disconnect();
+        }
+        leds.clear();
+        resistors.clear();
+        npnTransistors.clear();
+        pnpTransistors.clear();
+        sevenSegDisplays.clear();
+    }
+
+    // every peripheral, in report order
+    public List<EventPeripheral> all() {
+        List<EventPeripheral> all = new ArrayList<>();
+        all.addAll(leds);
+        all.addAll(resistors);
+        all.addAll(npnTransistors);
+        all.addAll(pnpTransistors);
+        all.addAll(sevenSegDisplays);
+        return all;
+    }
+}
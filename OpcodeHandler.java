@@ -0,0 +1,5 @@
+// one entry of the InstructionSet handler table
+// operands are already fetched by the caller, unused ones are 0
+interface OpcodeHandler {
+    void execute(int opcode, int operand1, int operand2);
+}
@@ -0,0 +1,131 @@
+import java.util.*;
+
+// static description of every opcode (length in bytes, machine cycles, mnemonic)
+// shared by the dispatch engine and anything else that needs to decode code memory
+final class OpcodeTable {
+    static final int[] LENGTH = new int[256];
+    static final int[] CYCLES = new int[256]; // machine cycles, 12 oscillator clocks each
+    static final String[] MNEMONIC = new String[256];
+    static final boolean[] ENDS_BLOCK = new boolean[256]; // always moves the PC elsewhere (jumps, calls, RET)
+
+    static {
+        Arrays.fill(LENGTH, 1); // unknown opcodes are treated as 1 byte
+        Arrays.fill(CYCLES, 1);
+
+        // ACC operations
+        define(0xE4, 1, 1, "CLR A");
+        define(0xF4, 1, 1, "CPL A");
+        define(0x04, 1, 1, "INC A");
+        define(0x14, 1, 1, "DEC A");
+        define(0x74, 2, 1, "MOV A,#data");
+        define(0x24, 2, 1, "ADD A,#data");
+        define(0x94, 2, 1, "SUBB A,#data");
+
+        // logic operations
+        define(0x44, 2, 1, "ORL A,#data");
+        define(0x54, 2, 1, "ANL A,#data");
+        define(0x62, 2, 1, "XRL A,#data");
+
+        // memory / bit operations
+        define(0x75, 3, 2, "MOV direct,#data");
+        define(0xD2, 2, 1, "SETB bit");
+        define(0xC2, 2, 1, "CLR bit");
+        define(0xF5, 2, 1, "MOV direct,A");
+        define(0xE5, 2, 1, "MOV A,direct");
+        define(0xB2, 2, 1, "CPL bit");
+
+        // code memory reads, the only way a program reads ROM as data
+        define(0x90, 3, 2, "MOV DPTR,#data16");
+        define(0x93, 1, 2, "MOVC A,@A+DPTR");
+        define(0x83, 1, 2, "MOVC A,@A+PC");
+
+        // direct addressing: RAM below 0x80, SFRs above
+        define(0x85, 3, 2, "MOV direct,direct");
+        define(0x25, 2, 1, "ADD A,direct");
+        define(0x35, 2, 1, "ADDC A,direct");
+        define(0x95, 2, 1, "SUBB A,direct");
+        define(0x45, 2, 1, "ORL A,direct");
+        define(0x55, 2, 1, "ANL A,direct");
+        define(0x65, 2, 1, "XRL A,direct");
+        define(0x42, 2, 1, "ORL direct,A");
+        define(0x52, 2, 1, "ANL direct,A");
+        define(0x43, 3, 2, "ORL direct,#data");
+        define(0x53, 3, 2, "ANL direct,#data");
+        define(0x63, 3, 2, "XRL direct,#data");
+        define(0x05, 2, 1, "INC direct");
+        define(0x15, 2, 1, "DEC direct");
+        define(0xC5, 2, 1, "XCH A,direct");
+
+        // control flow, rel is a signed offset from the next instruction
+        defineJump(0x80, 2, 2, "SJMP rel");
+        defineJump(0x02, 3, 2, "LJMP addr16");
+        defineJump(0x12, 3, 2, "LCALL addr16");
+        defineJump(0x22, 1, 2, "RET");
+        defineJump(0x32, 1, 2, "RETI");
+        define(0x60, 2, 2, "JZ rel");
+        define(0x70, 2, 2, "JNZ rel");
+        define(0x40, 2, 2, "JC rel");
+        define(0x50, 2, 2, "JNC rel");
+        define(0x20, 3, 2, "JB bit,rel");
+        define(0x30, 3, 2, "JNB bit,rel");
+        define(0xD5, 3, 2, "DJNZ direct,rel");
+        define(0xB4, 3, 2, "CJNE A,#data,rel");
+        define(0xB5, 3, 2, "CJNE A,direct,rel");
+        define(0xC0, 2, 2, "PUSH direct");
+        define(0xD0, 2, 2, "POP direct");
+        define(0xC3, 1, 1, "CLR C");
+        define(0xD3, 1, 1, "SETB C");
+        define(0xB3, 1, 1, "CPL C");
+        // AJMP/ACALL carry address bits 10..8 in the top 3 bits of the opcode
+        for (int page = 0; page < 8; page++) {
+            defineJump(0x01 + 32 * page, 2, 2, "AJMP addr11");
+            defineJump(0x11 + 32 * page, 2, 2, "ACALL addr11");
+        }
+
+        // indirect addressing through R0/R1
+        for (int i = 0; i < 2; i++) {
+            define(0xE6 + i, 1, 1, "MOV A,@R" + i);
+            define(0xF6 + i, 1, 1, "MOV @R" + i + ",A");
+            define(0x76 + i, 2, 1, "MOV @R" + i + ",#data");
+            define(0x86 + i, 2, 2, "MOV direct,@R" + i);
+            define(0xA6 + i, 2, 2, "MOV @R" + i + ",direct");
+            define(0xB6 + i, 3, 2, "CJNE @R" + i + ",#data,rel");
+        }
+
+        // register families, Rn = low 3 bits of the opcode
+        for (int r = 0; r < 8; r++) {
+            define(0x08 + r, 1, 1, "INC R" + r);
+            define(0x18 + r, 1, 1, "DEC R" + r);
+            define(0x28 + r, 1, 1, "ADD A,R" + r);
+            define(0x48 + r, 1, 1, "ORL A,R" + r);
+            define(0x58 + r, 1, 1, "ANL A,R" + r);
+            define(0x68 + r, 1, 1, "XRL A,R" + r);
+            define(0x78 + r, 2, 1, "MOV R" + r + ",#data");
+            define(0x88 + r, 2, 2, "MOV direct,R" + r);
+            define(0xA8 + r, 2, 2, "MOV R" + r + ",direct");
+            define(0x98 + r, 1, 1, "SUBB A,R" + r);
+            define(0xE8 + r, 1, 1, "MOV A,R" + r);
+            define(0xF8 + r, 1, 1, "MOV R" + r + ",A");
+            define(0xD8 + r, 2, 2, "DJNZ R" + r + ",rel");
+            define(0xB8 + r, 3, 2, "CJNE R" + r + ",#data,rel");
+        }
+    }
+
+    private OpcodeTable() {
+    }
+
+    private static void define(int opcode, int length, int cycles, String mnemonic) {
+        LENGTH[opcode] = length;
+        CYCLES[opcode] = cycles;
+        MNEMONIC[opcode] = mnemonic;
+    }
+
+    private static void defineJump(int opcode, int length, int cycles, String mnemonic) {
+        define(opcode, length, cycles, mnemonic);
+        ENDS_BLOCK[opcode] = true;
+    }
+
+    static boolean isDefined(int opcode) {
+        return MNEMONIC[opcode & 0xFF] != null;
+    }
+}
@@ -0,0 +1,4 @@
+// told when a pin actually changes level, time is the pins' clock (machine cycles on a Machine)
+interface PinListener {
+    void pinChanged(Pin pin, long time);
+}
@@ -0,0 +1,4 @@
+// told about every port latch change, whole bytes at a time (see Pins.setPortObserver)
+interface PortObserver {
+    void portChanged(int port, int oldValue, int newValue, long time);
+}
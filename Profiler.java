@@ -0,0 +1,156 @@
+import java.util.Arrays;
+import java.util.Locale;
+
+// execution profile (Machine.enableProfiler)
+// flat long[] counters indexed by ROM address and by opcode, bumped once per instruction by
+// every engine (translated blocks add theirs after the block ran), so profiling allocates
+// nothing while the program runs. cycles are OpcodeTable.CYCLES, the same figures the CPU
+// charges. the report ranks addresses and opcodes by machine cycles spent.
+class Profiler {
+    static final int DEFAULT_TOP = 20; // rows per table in the reports
+
+    private final long[] pcCounts;
+    private final long[] pcCycles;
+    private final long[] opcodeCounts = new long[256];
+    private final long[] opcodeCycles = new long[256];
+
+    Profiler(int codeSize) {
+        this.pcCounts = new long[codeSize];
+        this.pcCycles = new long[codeSize];
+    }
+
+    void record(int pc, int opcode, int cycles) {
+        pcCounts[pc]++;
+        pcCycles[pc] += cycles;
+        opcodeCounts[opcode]++;
+        opcodeCycles[opcode] += cycles;
+    }
+
+    // `times` runs of the same instruction, for idle loops skipped by Machine
+    void recordRepeated(int pc, int opcode, int cycles, long times) {
+        pcCounts[pc] += times;
+        pcCycles[pc] += cycles * times;
+        opcodeCounts[opcode] += times;
+        opcodeCycles[opcode] += cycles * times;
+    }
+
+    // the first `executed` instructions of a translated block, nextPc[i] is where the one after i starts
+    void recordBlock(int start, int[] nextPc, int[] opcodes, int[] cycles, int executed) {
+        int pc = start;
+        for (int i = 0; i < executed; i++) {
+            record(pc, opcodes[i], cycles[i]);
+            pc = nextPc[i];
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(pcCounts, 0);
+        Arrays.fill(pcCycles, 0);
+        Arrays.fill(opcodeCounts, 0);
+        Arrays.fill(opcodeCycles, 0);
+    }
+
+    public long getCount(int pc) {
+        return pcCounts[pc];
+    }
+
+    public long getCycles(int pc) {
+        return pcCycles[pc];
+    }
+
+    public long getOpcodeCount(int opcode) {
+        return opcodeCounts[opcode];
+    }
+
+    public long getOpcodeCycles(int opcode) {
+        return opcodeCycles[opcode];
+    }
+
+    public long totalInstructions() {
+        long total = 0;
+        for (long count : opcodeCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    public long totalCycles() {
+        long total = 0;
+        for (long cycles : opcodeCycles) {
+            total += cycles;
+        }
+        return total;
+    }
+
+    // indexes of the `top` largest non zero cycle counts, largest first (ties: lowest index first)
+    private static int[] hottest(long[] cycles, int top) {
+        int[] ranked = new int[Math.min(top, cycles.length)];
+        int size = 0;
+        for (int i = 0; i < cycles.length; i++) {
+            if (cycles[i] == 0 || (size == ranked.length && cycles[i] <= cycles[ranked[size - 1]])) {
+                continue;
+            }
+            // insertion into the short sorted list, the arrays are far larger than `top`
+            int at = size < ranked.length ? size++ : size - 1;
+            while (at > 0 && cycles[ranked[at - 1]] < cycles[i]) {
+                ranked[at] = ranked[at - 1];
+                at--;
+            }
+            ranked[at] = i;
+        }
+        return Arrays.copyOf(ranked, size);
+    }
+
+    private static String mnemonic(int opcode) {
+        String mnemonic = OpcodeTable.MNEMONIC[opcode & 0xFF];
+        return mnemonic != null ? mnemonic : String.format("DB 0x%02X", opcode);
+    }
+
+    private static double percent(long part, long whole) {
+        return whole == 0 ? 0 : part * 100.0 / whole;
+    }
+
+    // the opcode shown at an address is whatever is in ROM now
+    String text(Memory memory, int top) {
+        long cycles = totalCycles();
+        StringBuilder sb = new StringBuilder();
+        sb.append("Profile: ").append(totalInstructions()).append(" instructions, ").append(cycles).append(" machine cycles\n");
+        sb.append("  Hot spots:          count      cycles       %\n");
+        for (int pc : hottest(pcCycles, top)) {
+            sb.append(String.format(Locale.ROOT, "    0x%04X  %-18s %10d %10d %6.2f%n", pc, mnemonic(memory.fetchByte(pc)),
+                    pcCounts[pc], pcCycles[pc], percent(pcCycles[pc], cycles)));
+        }
+        sb.append("  Opcodes:            count      cycles       %\n");
+        for (int opcode : hottest(opcodeCycles, top)) {
+            sb.append(String.format(Locale.ROOT, "    0x%02X    %-18s %10d %10d %6.2f%n", opcode, mnemonic(opcode),
+                    opcodeCounts[opcode], opcodeCycles[opcode], percent(opcodeCycles[opcode], cycles)));
+        }
+        return sb.toString();
+    }
+
+    String json(Memory memory, int top) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"instructions\":").append(totalInstructions());
+        sb.append(",\"machineCycles\":").append(totalCycles());
+        sb.append(",\"hotSpots\":[");
+        int[] pcs = hottest(pcCycles, top);
+        for (int i = 0; i < pcs.length; i++) {
+            int pc = pcs[i];
+            sb.append(i == 0 ? "{" : ",{").append("\"pc\":").append(pc)
+              .append(",\"mnemonic\":").append(StateReport.quote(mnemonic(memory.fetchByte(pc))))
+              .append(",\"count\":").append(pcCounts[pc])
+              .append(",\"cycles\":").append(pcCycles[pc]).append('}');
+        }
+        sb.append("],\"opcodes\":[");
+        int[] opcodes = hottest(opcodeCycles, top);
+        for (int i = 0; i < opcodes.length; i++) {
+            int opcode = opcodes[i];
+            sb.append(i == 0 ? "{" : ",{").append("\"opcode\":").append(opcode)
+              .append(",\"mnemonic\":").append(StateReport.quote(mnemonic(opcode)))
+              .append(",\"count\":").append(opcodeCounts[opcode])
+              .append(",\"cycles\":").append(opcodeCycles[opcode]).append('}');
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+}
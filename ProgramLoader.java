@@ -0,0 +1,206 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+// loads program images into code memory, shared by the GUI and the headless runner
+// supported formats:
+//   .bin          raw image, byte i goes to ROM address i
+//   .hex / .ihx   Intel HEX
+//   .asm / .a51   assembler source, see Assembler
+//   anything else one hex opcode per line (0x74), line index = ROM address
+// binary and HEX files are memory mapped and copied straight into ROM. parsed text images are
+// cached as .bin files named by the SHA-256 of the text (directory from -Dsim.cache.dir,
+// default .simcache), so the next load of the same text is a mapped copy.
+class ProgramLoader {
+    private static final String CACHE_VERSION = "text-v1"; // part of the cache key
+
+    private ProgramLoader() {
+    }
+
+    // picks the loader from the file extension
+    static void load(Memory memory, String filePath) throws IOException {
+        String name = filePath.toLowerCase();
+        if (name.endsWith(".bin")) {
+            loadBinary(memory, Paths.get(filePath));
+        } else if (name.endsWith(".hex") || name.endsWith(".ihx")) {
+            loadIntelHex(memory, Paths.get(filePath));
+        } else if (name.endsWith(".asm") || name.endsWith(".a51")) {
+            loadAssembly(memory, Paths.get(filePath));
+        } else {
+            loadOpcodesFromFile(memory, filePath);
+        }
+    }
+
+    static void loadBinary(Memory memory, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > memory.getCodeSize()) {
+                throw new IOException(file + ": image is " + size + " bytes, ROM is " + memory.getCodeSize());
+            }
+            MappedByteBuffer image = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            memory.loadCode(0, image);
+        }
+    }
+
+    // assembled images are cached by Assembler
+    static void loadAssembly(Memory memory, Path file) throws IOException {
+        byte[] code;
+        try {
+            code = Assembler.assembleFile(file);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        memory.loadCode(0, code, 0, code.length);
+    }
+
+    static void loadIntelHex(Memory memory, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer text = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] data = new byte[255];
+            int base = 0;
+            int line = 0;
+            while (text.hasRemaining()) {
+                byte c = text.get();
+                if (c == '\n') {
+                    line++;
+                }
+                if (c != ':') {
+                    continue;
+                }
+                int count = hexByte(text, file, line);
+                int address = (hexByte(text, file, line) << 8) | hexByte(text, file, line);
+                int type = hexByte(text, file, line);
+                int sum = count + (address >> 8) + (address & 0xFF) + type;
+                for (int i = 0; i < count; i++) {
+                    int b = hexByte(text, file, line);
+                    data[i] = (byte) b;
+                    sum += b;
+                }
+                sum += hexByte(text, file, line);
+                if ((sum & 0xFF) != 0) {
+                    throw new IOException(file + ":" + (line + 1) + ": bad checksum");
+                }
+
+                switch (type) {
+                    case 0x00: // data
+                        memory.loadCode(base + address, data, 0, count);
+                        break;
+                    case 0x01: // end of file
+                        return;
+                    case 0x02: // extended segment address
+                        base = addressRecord(data, count, file, line) << 4;
+                        break;
+                    case 0x04: // extended linear address
+                        base = addressRecord(data, count, file, line) << 16;
+                        break;
+                    default: // 0x03 / 0x05 start address, nothing to do for the 8051
+                        break;
+                }
+            }
+        }
+    }
+
+    // the 16 bit payload of a 02/04 record, which has exactly 2 data bytes
+    private static int addressRecord(byte[] data, int count, Path file, int line) throws IOException {
+        if (count != 2) {
+            throw new IOException(file + ":" + (line + 1) + ": bad address record");
+        }
+        return ((data[0] & 0xFF) << 8) | (data[1] & 0xFF);
+    }
+
+    private static int hexByte(ByteBuffer text, Path file, int line) throws IOException {
+        if (text.remaining() < 2) {
+            throw new IOException(file + ":" + (line + 1) + ": truncated record");
+        }
+        int high = Character.digit(text.get(), 16);
+        int low = Character.digit(text.get(), 16);
+        if (high < 0 || low < 0) {
+            throw new IOException(file + ":" + (line + 1) + ": invalid hex digit");
+        }
+        return (high << 4) | low;
+    }
+
+    // one hex opcode per line (0x74), line index = ROM address, blank lines load as 0x00.
+    // a line that is not an opcode or an image larger than ROM fails the load, ROM is then untouched
+    static void loadOpcodesFromFile(Memory memory, String filePath) throws IOException {
+        byte[] content = Files.readAllBytes(Paths.get(filePath));
+        Path cached = cacheFile(content);
+        if (cached != null && Files.exists(cached)) {
+            loadBinary(memory, cached);
+            return;
+        }
+
+        List<String> lines = new String(content, StandardCharsets.ISO_8859_1).lines().toList();
+        if (lines.size() > memory.getCodeSize()) {
+            throw new IOException(filePath + ": image is " + lines.size() + " bytes, ROM is " + memory.getCodeSize());
+        }
+        byte[] image = new byte[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (!line.isEmpty()) {
+                int opcode = opcode(line);
+                if (opcode < 0) {
+                    throw new IOException(filePath + ":" + (i + 1) + ": not a hex opcode: " + line);
+                }
+                image[i] = (byte) opcode;
+            }
+        }
+        memory.loadCode(0, image, 0, image.length);
+        if (cached != null) {
+            storeCache(cached, image);
+        }
+    }
+
+    // 0x0 .. 0xFF, -1 for anything else
+    private static int opcode(String line) {
+        if (line.length() < 3 || line.length() > 4 || line.charAt(0) != '0' || (line.charAt(1) != 'x' && line.charAt(1) != 'X')) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 2; i < line.length(); i++) {
+            int digit = Character.digit(line.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private static Path cacheFile(byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(CACHE_VERSION.getBytes(StandardCharsets.US_ASCII));
+            byte[] hash = digest.digest(content);
+            StringBuilder name = new StringBuilder();
+            for (byte b : hash) {
+                name.append(String.format("%02x", b));
+            }
+            return Paths.get(System.getProperty("sim.cache.dir", ".simcache"), name + ".bin");
+        } catch (NoSuchAlgorithmException e) {
+            return null; // no cache, every load parses
+        }
+    }
+
+    // best effort, a failed write only costs the next load a parse
+    private static void storeCache(Path cached, byte[] image) {
+        try {
+            Files.createDirectories(cached.getParent());
+            Path temp = Files.createTempFile(cached.getParent(), "image", ".tmp");
+            Files.write(temp, image);
+            Files.move(temp, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("Could not cache program image: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,5 @@
+// something that happens at a machine cycle, registered with an EventScheduler
+// due is the cycle it was scheduled for, the CPU may already be a few cycles past it
+interface ScheduledEvent {
+    void fire(long due);
+}
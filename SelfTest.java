@@ -0,0 +1,531 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// self-checking tests for the simulator core, no test framework needed:
+//   java SelfTest          (mvn test runs it as well)
+// each check prints its name and result; any failure makes main throw at the end
+public class SelfTest {
+
+    interface Check {
+        void run() throws Exception;
+    }
+
+    private final List<String> failed = new ArrayList<>();
+
+    public static void main(String[] args) {
+        SelfTest test = new SelfTest();
+        test.check("ports reset to 0xFF", SelfTest::portsResetHigh);
+        test.check("EX0 with INT0 untouched takes no interrupt", SelfTest::externalInterruptIdleAfterReset);
+        test.check("EX0 with INT0 held low interrupts", SelfTest::externalInterruptLevelLow);
+        test.check("stepping back over a rising INT0 sets no IE0", SelfTest::externalInterruptStepBack);
+        test.check("interrupt priority: natural order, IP, nesting", SelfTest::interruptPriority);
+        test.check("one instruction runs after RETI before the next interrupt", SelfTest::retiHoldOff);
+        test.check("text loader rejects a malformed line", SelfTest::textLoaderRejectsBadLine);
+        test.check("a stop request cancels one run only", SelfTest::stopRequestCancelsOneRun);
+        test.check("SFR watchpoints see direct accesses, not step-back", SelfTest::sfrWatchpoint);
+        test.check("MOVC reads ROM and trips ROM read watchpoints", SelfTest::movcWatchpoint);
+        test.check("stepping back over running timers replays the same history", SelfTest::timerStepBack);
+        test.check("timer modes 0-3 overflow on the expected cycle", SelfTest::timerOverflowCycles);
+        test.check("a gated timer counts only while INT0 is high", SelfTest::timerGate);
+        test.check("INC/DEC/ADDC/XCH direct", SelfTest::directAluForms);
+        test.check("SUBB subtracts the borrow in CY", SelfTest::subtractWithBorrow);
+        test.check("a jump past the end of ROM is a fetch error in every engine", SelfTest::jumpPastRom);
+        test.check("every engine ends the sample programs in the same state", SelfTest::enginesAgreeOnSamples);
+        test.check("lazy flags read back through PSW, JC/JNC and PUSH PSW", SelfTest::lazyFlags);
+
+        if (!test.failed.isEmpty()) {
+            throw new AssertionError(test.failed.size() + " check(s) failed: " + test.failed);
+        }
+        System.err.println("all checks passed");
+    }
+
+    private void check(String name, Check check) {
+        try {
+            check.run();
+            System.err.println("ok    " + name);
+        } catch (Exception | AssertionError e) {
+            failed.add(name);
+            System.err.println("FAIL  " + name + ": " + e.getMessage());
+        }
+    }
+
+    // ---- interrupts ----
+
+    private static void portsResetHigh() {
+        Machine machine = new Machine();
+        for (int port = 0; port < 4; port++) {
+            assertEquals(0xFF, machine.getPins().readPort(port), "P" + port);
+        }
+        machine.getPins().writePort(3, 0x00);
+        machine.getCpu().reset();
+        assertEquals(0xFF, machine.getPins().readPort(3), "P3 after reset");
+    }
+
+    private static void externalInterruptIdleAfterReset() {
+        Machine machine = load(
+                "        LJMP main",
+                "        ORG 0x03",
+                "        INC R0",
+                "        RETI",
+                "main:   MOV IE,#0x81",
+                "        SJMP $");
+        assertEquals(Machine.StopReason.HALTED, machine.run(1000), "stop reason");
+        assertEquals(0, machine.getMemory().readDataByte(0), "INT0 handler runs");
+    }
+
+    private static void externalInterruptLevelLow() {
+        Machine machine = load(
+                "        LJMP main",
+                "        ORG 0x03",
+                "        INC R0",
+                "        RETI",
+                "main:   MOV IE,#0x81",
+                "        CLR P3.2",
+                "        SJMP $");
+        assertEquals(Machine.StopReason.CYCLE_LIMIT, machine.run(1000), "stop reason");
+        assertTrue(machine.getMemory().readDataByte(0) > 0, "INT0 handler never ran");
+    }
+
+    private static void externalInterruptStepBack() {
+        Machine machine = load(
+                "        SETB IT0",
+                "        CLR P3.2",
+                "        CLR IE0",
+                "        SETB P3.2",
+                "        SJMP $");
+        WriteJournal journal = machine.enableJournal(256);
+        for (int i = 0; i < 4; i++) {
+            machine.getCpu().cycle();
+        }
+        assertTrue(journal.stepBack(), "stepped back over SETB P3.2");
+        assertEquals(0, machine.getMemory().readSfr(Timers.TCON) & Interrupts.IE0, "IE0");
+    }
+
+    private static void interruptPriority() {
+        // both pending at once: INT0 before TF0, unless TF0 has the higher level
+        assertEquals("12", interruptOrder(0x00, true, false), "natural order");
+        assertEquals("21", interruptOrder(0x02, true, false), "PT0");
+        // TF0 raised inside the INT0 handler: a high level nests, a low one waits for RETI
+        assertEquals("21", interruptOrder(0x02, false, true), "high TF0 in low INT0");
+        assertEquals("12", interruptOrder(0x00, false, true), "low TF0 in low INT0");
+        assertEquals("12", interruptOrder(0x01, false, true), "low TF0 in high INT0");
+    }
+
+    // each handler appends its number (INT0 1, TF0 2) to a log at 40h when it finishes
+    private static String interruptOrder(int ip, boolean bothPending, boolean raiseInHandler) {
+        Machine machine = load(
+                "        LJMP main",
+                "        ORG 0x03",
+                raiseInHandler ? "        SETB TF0" : "",
+                "        MOV @R1,#1",
+                "        INC R1",
+                "        RETI",
+                "        ORG 0x0B",
+                "        MOV @R1,#2",
+                "        INC R1",
+                "        RETI",
+                "        ORG 0x30",
+                "main:   MOV R1,#40h",
+                "        MOV IP,#" + ip,
+                "        SETB IT0",
+                bothPending ? "        SETB TF0" : "",
+                "        SETB IE0",
+                "        MOV IE,#83h",
+                "        SJMP $");
+        machine.run(1000);
+        Memory memory = machine.getMemory();
+        StringBuilder order = new StringBuilder();
+        for (int address = 0x40; address < memory.readDataByte(1); address++) {
+            order.append(memory.readDataByte(address));
+        }
+        return order.toString();
+    }
+
+    private static void retiHoldOff() {
+        Machine machine = load(
+                "        LJMP main",
+                "        ORG 0x03",
+                "        INC R0",
+                "        RETI",
+                "        ORG 0x30",
+                "main:   MOV IE,#81h",
+                "        CLR P3.2            ; INT0 requests for as long as it stays low",
+                "loop:   INC R1",
+                "        SJMP loop");
+        CPU cpu = machine.getCpu();
+        cpu.setExecutionMode(ExecutionMode.REFERENCE); // one instruction per cycle() call
+        int handled = 0;
+        for (int i = 0; i < 200; i++) {
+            boolean reti = machine.getMemory().readByte(cpu.getProgramCounter()) == (byte) 0x32;
+            cpu.cycle();
+            if (reti) {
+                handled++;
+                assertTrue(cpu.getProgramCounter() >= 0x30, "interrupt taken straight after RETI");
+                cpu.cycle();
+                assertEquals(0x03, cpu.getProgramCounter(), "pc one instruction after RETI");
+            }
+        }
+        assertTrue(handled > 10, "INT0 handled only " + handled + " times");
+    }
+
+    // ---- loader ----
+
+    private static void textLoaderRejectsBadLine() throws IOException {
+        Path file = Files.createTempFile("selftest", ".txt");
+        try {
+            Files.writeString(file, "0x74\n0x05\nzz\n0x80\n0xFE\n");
+            Memory memory = new Memory(4096, 256);
+            try {
+                ProgramLoader.loadOpcodesFromFile(memory, file.toString());
+                throw new AssertionError("no IOException");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains(":3:"), "message names line 3: " + e.getMessage());
+            }
+            assertEquals(0, memory.readByte(0), "ROM[0] after the failed load");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // ---- timers ----
+
+    private static void timerStepBack() {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            timerStepBack(mode);
+        }
+    }
+
+    private static void timerStepBack(ExecutionMode mode) {
+        Machine machine = load(
+                "        MOV TMOD,#21h       ; T1 mode 2, T0 mode 1",
+                "        MOV TH1,#0F0h",
+                "        MOV TL1,#0F0h",
+                "        MOV TH0,#0FFh",
+                "        MOV TL0,#0C0h",
+                "        SETB TR0",
+                "        SETB TR1",
+                "loop:   JNB TF0,loop",
+                "        CLR TF0",
+                "        MOV TH0,#0FFh",
+                "        MOV TL0,#0E0h",
+                "        MOV A,30h",
+                "        INC A",
+                "        MOV 30h,A",
+                "        SJMP loop");
+        machine.getCpu().setExecutionMode(mode);
+        WriteJournal journal = machine.enableJournal(1 << 16);
+        int steps = 600;
+        List<String> states = new ArrayList<>();
+        for (int i = 0; i < steps; i++) {
+            states.add(timerState(machine));
+            machine.getCpu().cycle();
+        }
+        states.add(timerState(machine));
+        assertTrue(machine.getMemory().readDataByte(0x30) > 3, "timer 0 overflowed only " + machine.getMemory().readDataByte(0x30) + " times");
+        for (int i = steps - 1; i >= 0; i--) {
+            assertTrue(journal.stepBack(), "step back " + i);
+            assertEquals(states.get(i), timerState(machine), mode + " stepping back to " + i);
+        }
+        for (int i = 1; i <= steps; i++) {
+            machine.getCpu().cycle();
+            assertEquals(states.get(i), timerState(machine), mode + " running forward to " + i);
+        }
+    }
+
+    private static void timerOverflowCycles() {
+        // mode 0: 13 bit count TH0:TL0[4:0] = 1FF0, 16 cycles to 2000
+        assertEquals(List.of(16L), overflowCycles(0x00, 0xFF, 0x10, Timers.TF0, 1), "mode 0");
+        // mode 1: FFF0, 16 cycles to 10000
+        assertEquals(List.of(16L), overflowCycles(0x01, 0xFF, 0xF0, Timers.TF0, 1), "mode 1");
+        // mode 2: TL0 F0 overflows after 16 cycles, then reloads F8 from TH0 every 8
+        assertEquals(List.of(16L, 24L, 32L), overflowCycles(0x02, 0xF8, 0xF0, Timers.TF0, 3), "mode 2");
+        // mode 3: TL0 F0 under TR0 sets TF0 after 16, TH0 E0 under TR1 sets TF1 after 32
+        assertEquals(List.of(16L), overflowCycles(0x03, 0xE0, 0xF0, Timers.TF0, 1), "mode 3 TL0");
+        assertEquals(List.of(32L), overflowCycles(0x03, 0xE0, 0xF0, Timers.TF1, 1), "mode 3 TH0");
+    }
+
+    // starts timer 0 (and TR1 for mode 3's TH0) at cycle 0, then runs 1 cycle instructions and
+    // returns the cycles, counted from the start, at which the flag was found set. it is cleared each time
+    private static List<Long> overflowCycles(int tmod, int th0, int tl0, int flag, int overflows) {
+        String[] program = new String[101];
+        Arrays.fill(program, "        INC A");
+        program[100] = "        SJMP $";
+        Machine machine = load(program);
+        Memory memory = machine.getMemory();
+        CPU cpu = machine.getCpu();
+        cpu.setExecutionMode(ExecutionMode.REFERENCE); // one instruction per cycle() call
+        memory.writeSfr(Timers.TMOD, tmod);
+        memory.writeSfr(Timers.TH0, th0);
+        memory.writeSfr(Timers.TL0, tl0);
+        long start = cpu.getMachineCycles();
+        memory.writeSfr(Timers.TCON, Timers.TR0 | Timers.TR1);
+        List<Long> cycles = new ArrayList<>();
+        while (cycles.size() < overflows && cpu.getMachineCycles() - start < 100) {
+            cpu.cycle();
+            int tcon = memory.readSfr(Timers.TCON);
+            if ((tcon & flag) != 0) {
+                cycles.add(cpu.getMachineCycles() - start);
+                memory.writeSfr(Timers.TCON, tcon & ~flag);
+            }
+        }
+        return cycles;
+    }
+
+    private static void timerGate() {
+        String[] program = new String[101];
+        Arrays.fill(program, "        INC A");
+        program[100] = "        SJMP $";
+        Machine machine = load(program);
+        Memory memory = machine.getMemory();
+        CPU cpu = machine.getCpu();
+        cpu.setExecutionMode(ExecutionMode.REFERENCE); // one instruction per cycle() call
+        memory.writeSfr(Timers.TMOD, 0x09); // timer 0 mode 1, GATE
+        memory.writeSfr(0xB0, 0xFB); // INT0 low
+        memory.writeSfr(Timers.TCON, Timers.TR0);
+        // P3, cycles, TL0 after them or -1 to leave it unread (a read brings the timer up to date)
+        int[][] phases = {{0xFB, 10, -1}, {0xFF, 6, 6}, {0xFF, 5, -1}, {0xFB, 5, 11}};
+        for (int[] phase : phases) {
+            memory.writeSfr(0xB0, phase[0]);
+            for (int i = 0; i < phase[1]; i++) {
+                cpu.cycle();
+            }
+            if (phase[2] >= 0) {
+                assertEquals(phase[2], memory.readSfr(Timers.TL0), "TL0 at cycle " + cpu.getMachineCycles());
+            }
+        }
+    }
+
+    // pc, cycles, T0/T1 registers as the program would read them, and the overflow count
+    private static String timerState(Machine machine) {
+        CPU cpu = machine.getCpu();
+        StringBuilder state = new StringBuilder();
+        state.append(String.format("pc=%04X cycles=%d", cpu.getProgramCounter(), cpu.getMachineCycles()));
+        for (int address = Timers.TCON; address <= Timers.TH1; address++) {
+            state.append(String.format(" %02X", machine.getMemory().readSfr(address)));
+        }
+        return state.append(" count=").append(machine.getMemory().readDataByte(0x30)).toString();
+    }
+
+    // ---- machine ----
+
+    private static void stopRequestCancelsOneRun() {
+        Machine machine = load(
+                "        MOV A,#5",
+                "        SJMP $");
+        MachineSnapshot start = machine.snapshot();
+        machine.requestStop();
+        assertEquals(Machine.StopReason.CANCELLED, machine.run(1000), "cancelled run");
+        machine.restore(start);
+        assertEquals(Machine.StopReason.HALTED, machine.run(1000), "run after the cancelled one");
+        assertEquals((byte) 5, machine.getCpu().getAccumulator(), "ACC");
+    }
+
+    private static void sfrWatchpoint() {
+        Machine machine = load(
+                "        MOV 30h,#1",
+                "        MOV P1,#55h",
+                "        SJMP $");
+        WriteJournal journal = machine.enableJournal(256);
+        Debugger debugger = machine.debugger();
+        debugger.watchSfr(0x90, false, true);
+        assertEquals(Machine.StopReason.BREAKPOINT, machine.run(1000), "stop reason");
+        assertEquals(Debugger.HitKind.SFR_WRITE, debugger.getHitKind(), "hit");
+        assertEquals(0x90, debugger.getHitAddress(), "hit address");
+        assertEquals(0x03, debugger.getHitPc(), "hit pc");
+
+        debugger.unwatchSfr(0x90);
+        debugger.watchRam(0x30, false, true);
+        debugger.watchSfr(0x90, true, true);
+        debugger.watchPin(machine.getPins().p1_1);
+        assertTrue(journal.stepBack() && journal.stepBack(), "stepped back twice");
+        assertTrue(!debugger.shouldBreakAfter(0), "step-back triggered a watchpoint");
+    }
+
+    // ---- instructions ----
+
+    private static void directAluForms() {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            Machine machine = load(
+                    "        MOV 30h,#0FFh",
+                    "        INC 30h             ; wraps to 00",
+                    "        DEC 31h             ; 00 -> FF",
+                    "        MOV A,#80h",
+                    "        ADD A,#80h          ; A = 00, CY = 1",
+                    "        ADDC A,31h          ; 00 + FF + 1 = 00, CY = 1",
+                    "        MOV 32h,#5Ah",
+                    "        XCH A,32h",
+                    "        INC 33h             ; CY still set",
+                    "        SJMP $");
+            machine.getCpu().setExecutionMode(mode);
+            assertEquals(Machine.StopReason.HALTED, machine.run(1000), mode + " stop reason");
+            Memory memory = machine.getMemory();
+            assertEquals(0x00, memory.readDataByte(0x30), mode + " INC 30h");
+            assertEquals(0xFF, memory.readDataByte(0x31), mode + " DEC 31h");
+            assertEquals(0x00, memory.readDataByte(0x32), mode + " XCH, 32h");
+            assertEquals((byte) 0x5A, machine.getCpu().getAccumulator(), mode + " XCH, ACC");
+            assertEquals(1, memory.readDataByte(0x33), mode + " INC 33h");
+            assertTrue(machine.getCpu().getcarryFlag(), mode + " INC direct cleared CY");
+        }
+    }
+
+    private static void subtractWithBorrow() {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            Machine machine = load(
+                    "        MOV 30h,#35h        ; 0235h",
+                    "        MOV 31h,#02h",
+                    "        MOV R2,#12h",
+                    "        CLR C",
+                    "        MOV A,#34h          ; 1234h - 0235h, low bytes first",
+                    "        SUBB A,30h",
+                    "        MOV 40h,A",
+                    "        MOV A,R2",
+                    "        SUBB A,31h",
+                    "        MOV 41h,A",
+                    "        SETB C",
+                    "        MOV A,#10h",
+                    "        SUBB A,#0Fh         ; 10h - 0Fh - 1 = 00",
+                    "        MOV 42h,A",
+                    "        SETB C",
+                    "        MOV A,#05h",
+                    "        MOV R3,#05h",
+                    "        SUBB A,R3           ; 05h - 05h - 1 = FFh, CY",
+                    "        MOV 43h,A",
+                    "        SJMP $");
+            machine.getCpu().setExecutionMode(mode);
+            assertEquals(Machine.StopReason.HALTED, machine.run(1000), mode + " stop reason");
+            Memory memory = machine.getMemory();
+            assertEquals(0x0FFF, memory.readDataByte(0x41) << 8 | memory.readDataByte(0x40), mode + " 1234h - 0235h");
+            assertEquals(0x00, memory.readDataByte(0x42), mode + " SUBB A,#data");
+            assertEquals(0xFF, memory.readDataByte(0x43), mode + " SUBB A,Rn");
+            assertTrue(machine.getCpu().getcarryFlag(), mode + " CY after 05h - 05h - 1");
+        }
+    }
+
+    private static void jumpPastRom() {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            Machine machine = load(
+                    "        MOV A,#1",
+                    "        LJMP 2000h");
+            machine.getCpu().setExecutionMode(mode);
+            assertEquals(Machine.StopReason.ERROR, machine.run(100), mode + " stop reason");
+            assertTrue(machine.getError().startsWith("Invalid memory access"), mode + " error: " + machine.getError());
+        }
+    }
+
+    private static void enginesAgreeOnSamples() throws IOException {
+        List<String> names = new ArrayList<>();
+        List<byte[]> images = new ArrayList<>();
+        Benchmark.readSamplePrograms(Path.of("sample_programs.txt"), names, images);
+        assertTrue(!images.isEmpty(), "no sample programs");
+        for (int i = 0; i < images.size(); i++) {
+            byte[] expected = null;
+            for (ExecutionMode mode : ExecutionMode.values()) {
+                Machine machine = new Machine();
+                machine.getMemory().loadCode(0, images.get(i), 0, images.get(i).length);
+                machine.getCpu().setExecutionMode(mode);
+                assertEquals(Machine.StopReason.HALTED, machine.run(100_000), names.get(i) + " " + mode + " stop reason");
+                ByteArrayOutputStream state = new ByteArrayOutputStream();
+                machine.snapshot().write(state);
+                if (expected == null) {
+                    expected = state.toByteArray();
+                } else {
+                    assertTrue(Arrays.equals(expected, state.toByteArray()), names.get(i) + ": " + mode + " differs from " + ExecutionMode.values()[0]);
+                }
+            }
+        }
+    }
+
+    private static void lazyFlags() {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            Machine machine = load(
+                    "        MOV A,#0FFh",
+                    "        ADD A,#1            ; A = 00: CY AC P",
+                    "        MOV 30h,PSW",
+                    "        PUSH PSW            ; to 08h",
+                    "        JNC fail",
+                    "        JC next1",
+                    "        SJMP fail",
+                    "next1:  MOV A,#7Fh",
+                    "        ADD A,#1            ; A = 80: AC OV",
+                    "        MOV 31h,PSW",
+                    "        PUSH PSW            ; to 09h",
+                    "        JC fail",
+                    "        JNC next2",
+                    "        SJMP fail",
+                    "next2:  CLR C",
+                    "        MOV A,#10h",
+                    "        SUBB A,#20h         ; A = F0: CY P",
+                    "        MOV 32h,PSW",
+                    "        JNC fail",
+                    "        MOV 33h,#1",
+                    "fail:   SJMP $");
+            machine.getCpu().setExecutionMode(mode);
+            assertEquals(Machine.StopReason.HALTED, machine.run(1000), mode + " stop reason");
+            // P is set for an even number of ones, as the simulator has always computed it
+            Memory memory = machine.getMemory();
+            assertEquals(1, memory.readDataByte(0x33), mode + " a JC/JNC went the wrong way");
+            assertEquals(0xC1, memory.readDataByte(0x30), mode + " PSW after FF+1");
+            assertEquals(0xC1, memory.readDataByte(0x08), mode + " pushed PSW after FF+1");
+            assertEquals(0x44, memory.readDataByte(0x31), mode + " PSW after 7F+1");
+            assertEquals(0x44, memory.readDataByte(0x09), mode + " pushed PSW after 7F+1");
+            assertEquals(0x81, memory.readDataByte(0x32), mode + " PSW after 10-20");
+        }
+    }
+
+    private static void movcWatchpoint() {
+        String[] program = {
+                "        MOV DPTR,#table",
+                "        MOV A,#2",
+                "        MOVC A,@A+DPTR",
+                "        MOV 30h,A",
+                "        MOV A,#3",
+                "        MOVC A,@A+PC        ; past SJMP $ and 77h",
+                "        SJMP $",
+                "        DB 77h, 88h",
+                "table:  DB 11h, 22h, 33h"};
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            Machine machine = load(program);
+            machine.getCpu().setExecutionMode(mode);
+            assertEquals(Machine.StopReason.HALTED, machine.run(1000), mode + " stop reason");
+            assertEquals(0x33, machine.getMemory().readDataByte(0x30), mode + " MOVC A,@A+DPTR");
+            assertEquals((byte) 0x88, machine.getCpu().getAccumulator(), mode + " MOVC A,@A+PC");
+        }
+
+        Machine machine = load(program);
+        Debugger debugger = machine.debugger();
+        int table = machine.getMemory().readByte(1) << 8 | machine.getMemory().readByte(2);
+        debugger.watchRom(table + 2, true, false);
+        debugger.watchRom(0, true, false); // fetched, never read as data
+        assertEquals(Machine.StopReason.BREAKPOINT, machine.run(1000), "stop reason");
+        assertEquals(Debugger.HitKind.ROM_READ, debugger.getHitKind(), "hit");
+        assertEquals(table + 2, debugger.getHitAddress(), "hit address");
+        assertEquals(0x05, debugger.getHitPc(), "hit pc");
+    }
+
+    // ---- helpers ----
+
+    // assembles the lines and loads them at address 0 of a fresh machine
+    static Machine load(String... lines) {
+        byte[] image = Assembler.assemble("test", String.join("\n", lines));
+        Machine machine = new Machine();
+        machine.getMemory().loadCode(0, image, 0, image.length);
+        return machine;
+    }
+
+    static void assertEquals(Object expected, Object actual, String what) {
+        if (!expected.equals(actual)) {
+            throw new AssertionError(what + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    static void assertTrue(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+// a special function register whose value lives somewhere else (ACC in the CPU, the port latches
+// in Pins...), installed with Memory.setSfrHook. address is the SFR address, 0x80..0xFF
+interface SfrHook {
+    int read(int address);
+
+    void write(int address, int value);
+
+    // the journal stepping back puts the value an earlier write replaced back. hooks that keep
+    // state derived from the register restore it here without the side effects of a write
+    default void restore(int address, int value) {
+        write(address, value);
+    }
+}
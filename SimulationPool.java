@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// runs many independent machines concurrently on a fork-join pool
+// every job gets its own Machine (CPU, Memory, Pins, Netlist), nothing is shared between jobs
+public class SimulationPool implements AutoCloseable {
+
+    // fills a fresh machine before it runs: load the program, wire the netlist, pick an engine...
+    interface MachineSetup {
+        void prepare(Machine machine) throws Exception;
+    }
+
+    private final ForkJoinPool executor;
+
+    public SimulationPool() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public SimulationPool(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.executor = new ForkJoinPool(parallelism);
+    }
+
+    public Job submit(String name, long maxCycles, MachineSetup setup) {
+        Job job = new Job(name, new Machine());
+        job.future = CompletableFuture.supplyAsync(() -> job.execute(maxCycles, setup), executor);
+        return job;
+    }
+
+    // waits for every job, results in submission order
+    public static List<Result> awaitAll(List<Job> jobs) throws InterruptedException {
+        List<Result> results = new ArrayList<>(jobs.size());
+        for (Job job : jobs) {
+            results.add(job.result());
+        }
+        return results;
+    }
+
+    // waits for the submitted jobs. interrupted, it returns early with the interrupt flag set again
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static final class Job {
+        private final String name;
+        private final Machine machine;
+        private CompletableFuture<Result> future;
+
+        private Job(String name, Machine machine) {
+            this.name = name;
+            this.machine = machine;
+        }
+
+        private Result execute(long maxCycles, MachineSetup setup) {
+            long start = System.nanoTime();
+            try {
+                setup.prepare(machine);
+            } catch (Exception e) {
+                return new Result(name, machine, Machine.StopReason.ERROR, e.toString(), System.nanoTime() - start);
+            }
+            Machine.StopReason reason = machine.run(maxCycles);
+            return new Result(name, machine, reason, machine.getError(), System.nanoTime() - start);
+        }
+
+        // cooperative: the job finishes with StopReason.CANCELLED at its next check
+        public void cancel() {
+            machine.requestStop();
+        }
+
+        public boolean isDone() {
+            return future.isDone();
+        }
+
+        public Result result() throws InterruptedException {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                return new Result(name, machine, Machine.StopReason.ERROR, String.valueOf(e.getCause()), 0);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public static final class Result {
+        public final String name;
+        public final Machine machine; // final state, safe to read once the job is done
+        public final Machine.StopReason reason;
+        public final String error;
+        public final long elapsedNanos;
+
+        Result(String name, Machine machine, Machine.StopReason reason, String error, long elapsedNanos) {
+            this.name = name;
+            this.machine = machine;
+            this.reason = reason;
+            this.error = error;
+            this.elapsedNanos = elapsedNanos;
+        }
+    }
+}
@@ -1,31 +1,39 @@
 import javax.swing.*;
 import java.awt.*;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.List;
 
 public class Simulator {
+    private static Machine machine;
     private static Memory memory;
     private static CPU cpu;
     private static Pins pins;
     private static InstructionSet instructionSet;
 
-    private static ArrayList<LED> leds = new ArrayList<>();
-    private static ArrayList<Resistor> resistors = new ArrayList<>();
-    private static ArrayList<npn> npnTransistors = new ArrayList<>();
-    private static ArrayList<pnp> pnpTransistors = new ArrayList<>();
-    private static ArrayList<seven_seg_display> sevenSegDisplays = new ArrayList<>();
+    // views of the machine's netlist
+    private static ArrayList<LED> leds;
+    private static ArrayList<Resistor> resistors;
+    private static ArrayList<npn> npnTransistors;
+    private static ArrayList<pnp> pnpTransistors;
+    private static ArrayList<seven_seg_display> sevenSegDisplays;
 
     private static JPanel initPanel;
     private static DefaultListModel<String> peripheralsListModel;
 
     public static void main(String[] args) {
-        memory = new Memory(4096, 128); // 4KB ROM, 128B RAM
-        pins = new Pins();
-        cpu = new CPU(memory, pins);
+        machine = new Machine(4096, 256); // 4KB ROM, 256B RAM
+        memory = machine.getMemory();
+        pins = machine.getPins();
+        cpu = machine.getCpu();
         instructionSet = new InstructionSet(cpu, memory, pins);
 
+        Netlist netlist = machine.getNetlist();
+        leds = netlist.leds;
+        resistors = netlist.resistors;
+        npnTransistors = netlist.npnTransistors;
+        pnpTransistors = netlist.pnpTransistors;
+        sevenSegDisplays = netlist.sevenSegDisplays;
+
         SwingUtilities.invokeLater(Simulator::createAndShowGUI);
     }
 
@@ -308,19 +316,19 @@ public class Simulator {
     }
 
  private static void executeProgram() {
-        loadOpcodesFromFile(memory, "instructions.txt");
+        if (!loadOpcodesFromFile(memory, "instructions.txt")) {
+            return;
+        }
         executeInstructions();
         displayResults();
     }
 
     private static void executeInstructions() {
-        while (true) {
-			
-            int opcode = memory.readByte(cpu.getProgramCounter());
-            if (opcode == 0xFF) {
-                break;
-            }
-            cpu.cycle();
+        Machine.StopReason reason = machine.run(Long.MAX_VALUE);
+        if (reason == Machine.StopReason.ERROR) {
+            System.err.println("Execution stopped: " + machine.getError());
+        } else if (reason == Machine.StopReason.BREAKPOINT) {
+            System.out.println("Execution stopped: " + machine.debugger().describeHit());
         }
     }
 
@@ -410,11 +418,7 @@ public class Simulator {
         JButton resetButton = new JButton("Reset");
         resetButton.addActionListener(e -> {
             cpu.reset();
-            leds.clear();
-            resistors.clear();
-            npnTransistors.clear();
-            pnpTransistors.clear();
-            sevenSegDisplays.clear();
+            machine.getNetlist().clear();
             npn.resetInstanceCount();
             pnp.resetInstanceCount();
 			peripheralsListModel.clear(); 
@@ -437,24 +441,17 @@ public class Simulator {
         resultsFrame.setVisible(true);
     }
 
-    private static void loadOpcodesFromFile(Memory memory, String filePath) {
+    // the window reports a bad file on stderr instead of failing, false if nothing was loaded
+    private static boolean loadOpcodesFromFile(Memory memory, String filePath) {
         try {
-            List<String> lines = Files.readAllLines(Paths.get(filePath));
-            for (int i = 0; i < lines.size(); i++) {
-                String line = lines.get(i).trim();
-                if (!line.isEmpty()) {
-                    int opcode = Integer.parseInt(line.substring(2), 16);
-                    memory.writeByte(i, (byte) opcode);
-                }
-            }
-        } catch (Exception e) {
+            ProgramLoader.loadOpcodesFromFile(memory, filePath);
+            return true;
+        } catch (IOException e) {
             System.err.println("Error reading opcodes from file: " + e.getMessage());
+            return false;
         }
     }
 
-
-
-    
     private static String[] getPinNames() {
         return new String[]{"p0_0", "p0_1", "p0_2", "p0_3", "p0_4", "p0_5", "p0_6", "p0_7",
                             "p1_0", "p1_1", "p1_2", "p1_3", "p1_4", "p1_5", "p1_6", "p1_7",
@@ -463,7 +460,7 @@ public class Simulator {
 
     private static Pin getPinByName(String pinName) {
         try {
-            return (Pin) Pins.class.getField(pinName).get(pins);
+            return pins.getPin(pinName);
         } catch (Exception e) {
             e.printStackTrace();
             return null;
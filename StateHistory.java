@@ -0,0 +1,43 @@
+import java.util.Arrays;
+
+// append-only log of (time, state) pairs, one entry per change of a peripheral's state
+// kept in primitive arrays so recording an edge never boxes
+class StateHistory {
+    private long[] times = new long[16];
+    private int[] states = new int[16];
+    private int size;
+
+    public void record(long time, int state) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            states = Arrays.copyOf(states, size * 2);
+        }
+        times[size] = time;
+        states[size] = state;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long timeAt(int index) {
+        checkIndex(index);
+        return times[index];
+    }
+
+    public int stateAt(int index) {
+        checkIndex(index);
+        return states[index];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("History index " + index + ", size " + size);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import java.util.List;
+import java.util.Locale;
+
+// plain text / JSON dump of a machine's final state, used by the headless runner
+class StateReport {
+
+    private StateReport() {
+    }
+
+    static String text(String program, Machine machine, Machine.StopReason reason, String error) {
+        CPU cpu = machine.getCpu();
+        Memory memory = machine.getMemory();
+        Netlist netlist = machine.getNetlist();
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("== ").append(program).append(" ==\n");
+        sb.append("Stop: ").append(reason);
+        if (error != null) {
+            sb.append(" (").append(error).append(')');
+        }
+        sb.append('\n');
+        sb.append("Instructions: ").append(cpu.getInstructionCount()).append('\n');
+        sb.append("Machine cycles: ").append(cpu.getMachineCycles())
+          .append(String.format(" (%.3f ms at %.4f MHz)", cpu.getSimulatedNanos() / 1e6, cpu.getCrystalFrequency() / 1e6)).append('\n');
+        sb.append(String.format("Speed: %.2f MIPS, %.2fx real time (%s, %.3f ms wall)",
+                machine.getLastRunMips(), machine.getLastRunSpeedRatio(), machine.getClockMode(),
+                machine.getLastRunWallNanos() / 1e6)).append('\n');
+        sb.append("Accumulator: 0x").append(String.format("%02X", cpu.getAccumulator())).append('\n');
+        sb.append("DPTR: 0x").append(String.format("%04X", cpu.getdptr())).append('\n');
+        sb.append("B Register: 0x").append(String.format("%02X", cpu.getb_reg())).append('\n');
+        sb.append("Program Counter: 0x").append(String.format("%04X", cpu.getProgramCounter())).append('\n');
+        sb.append("CY=").append(bit(cpu.getcarryFlag()))
+          .append(" AC=").append(bit(cpu.getauxiliaryCarryFlag()))
+          .append(" F0=").append(bit(cpu.getfo()))
+          .append(" RS1=").append(bit(cpu.getregset1()))
+          .append(" RS0=").append(bit(cpu.getregset0()))
+          .append(" OV=").append(bit(cpu.getoverflowFlag()))
+          .append(" P=").append(bit(cpu.getparityFlag())).append('\n');
+
+        for (int port = 0; port < 4; port++) {
+            sb.append('P').append(port).append(": 0x").append(String.format("%02X", portValue(machine.getPins(), port)));
+            sb.append(port == 3 ? '\n' : ' ');
+        }
+
+        sb.append("RAM:\n");
+        for (int row = 0; row < memory.getDataSize(); row += 16) {
+            sb.append(String.format("  %02X:", row));
+            for (int i = row; i < row + 16 && i < memory.getDataSize(); i++) {
+                sb.append(String.format(" %02X", memory.readDataByte(i)));
+            }
+            sb.append('\n');
+        }
+
+        sb.append("Peripherals:\n");
+        for (LED led : netlist.leds) {
+            sb.append("  ").append(led.checkState()).append('\n');
+        }
+        for (Resistor resistor : netlist.resistors) {
+            sb.append("  ").append(resistor.checkVoltageDrop()).append('\n');
+        }
+        for (npn transistor : netlist.npnTransistors) {
+            sb.append("  ").append(transistor.checkVoltage()).append('\n');
+        }
+        for (pnp transistor : netlist.pnpTransistors) {
+            sb.append("  ").append(transistor.checkVoltage()).append('\n');
+        }
+        for (seven_seg_display ssd : netlist.sevenSegDisplays) {
+            sb.append("  ").append(ssd.getDisplayOutput().replace("\n", "\n  ")).append('\n');
+        }
+
+        // every state change seen while running, timestamps in machine cycles
+        List<EventPeripheral> peripherals = netlist.all();
+        if (!peripherals.isEmpty()) {
+            sb.append("History:\n");
+            for (int p = 0; p < peripherals.size(); p++) {
+                EventPeripheral peripheral = peripherals.get(p);
+                StateHistory history = peripheral.getHistory();
+                sb.append("  #").append(p).append('\n');
+                for (int i = 0; i < history.size(); i++) {
+                    sb.append(String.format("    %10d  ", history.timeAt(i)))
+                      .append(peripheral.describe(history.stateAt(i)).replace("\n", " | ")).append('\n');
+                }
+            }
+        }
+
+        if (machine.getProfiler() != null) {
+            sb.append(machine.getProfiler().text(memory, Profiler.DEFAULT_TOP));
+        }
+        return sb.toString();
+    }
+
+    static String json(String program, Machine machine, Machine.StopReason reason, String error) {
+        CPU cpu = machine.getCpu();
+        Memory memory = machine.getMemory();
+        Netlist netlist = machine.getNetlist();
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("{\"program\":").append(quote(program));
+        sb.append(",\"stop\":").append(quote(reason.name()));
+        if (error != null) {
+            sb.append(",\"error\":").append(quote(error));
+        }
+        sb.append(",\"instructions\":").append(cpu.getInstructionCount());
+        sb.append(",\"machineCycles\":").append(cpu.getMachineCycles());
+        sb.append(",\"crystalHz\":").append(cpu.getCrystalFrequency());
+        sb.append(",\"clock\":").append(quote(machine.getClockMode().name()));
+        sb.append(",\"simulatedNanos\":").append((long) cpu.getSimulatedNanos());
+        sb.append(",\"wallNanos\":").append(machine.getLastRunWallNanos());
+        sb.append(",\"mips\":").append(String.format(Locale.ROOT, "%.3f", machine.getLastRunMips()));
+        sb.append(",\"cpu\":{\"acc\":").append(cpu.getAccumulator() & 0xFF)
+          .append(",\"b\":").append(cpu.getb_reg() & 0xFF)
+          .append(",\"dptr\":").append(cpu.getdptr())
+          .append(",\"pc\":").append(cpu.getProgramCounter())
+          .append(",\"cy\":").append(cpu.getcarryFlag())
+          .append(",\"ac\":").append(cpu.getauxiliaryCarryFlag())
+          .append(",\"f0\":").append(cpu.getfo())
+          .append(",\"rs1\":").append(cpu.getregset1())
+          .append(",\"rs0\":").append(cpu.getregset0())
+          .append(",\"ov\":").append(cpu.getoverflowFlag())
+          .append(",\"p\":").append(cpu.getparityFlag()).append('}');
+
+        sb.append(",\"ports\":[");
+        for (int port = 0; port < 4; port++) {
+            sb.append(port == 0 ? "" : ",").append(portValue(machine.getPins(), port));
+        }
+        sb.append("],\"ram\":[");
+        for (int i = 0; i < memory.getDataSize(); i++) {
+            sb.append(i == 0 ? "" : ",").append(memory.readDataByte(i));
+        }
+        sb.append("],\"peripherals\":[");
+        boolean first = true;
+        for (LED led : netlist.leds) {
+            first = element(sb, first, led.checkState());
+        }
+        for (Resistor resistor : netlist.resistors) {
+            first = element(sb, first, resistor.checkVoltageDrop());
+        }
+        for (npn transistor : netlist.npnTransistors) {
+            first = element(sb, first, transistor.checkVoltage());
+        }
+        for (pnp transistor : netlist.pnpTransistors) {
+            first = element(sb, first, transistor.checkVoltage());
+        }
+        for (seven_seg_display ssd : netlist.sevenSegDisplays) {
+            first = element(sb, first, ssd.getDisplayOutput());
+        }
+        // one [time, state] list per peripheral, same order as "peripherals"
+        sb.append("],\"history\":[");
+        List<EventPeripheral> peripherals = netlist.all();
+        for (int p = 0; p < peripherals.size(); p++) {
+            EventPeripheral peripheral = peripherals.get(p);
+            StateHistory history = peripheral.getHistory();
+            sb.append(p == 0 ? "[" : ",[");
+            for (int i = 0; i < history.size(); i++) {
+                sb.append(i == 0 ? "[" : ",[").append(history.timeAt(i)).append(',')
+                  .append(quote(peripheral.describe(history.stateAt(i)))).append(']');
+            }
+            sb.append(']');
+        }
+        sb.append(']');
+        if (machine.getProfiler() != null) {
+            sb.append(",\"profile\":").append(machine.getProfiler().json(memory, Profiler.DEFAULT_TOP));
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+
+    static int portValue(Pins pins, int port) {
+        return pins.readPort(port);
+    }
+
+    private static boolean element(StringBuilder sb, boolean first, String value) {
+        if (!first) {
+            sb.append(',');
+        }
+        sb.append(quote(value));
+        return false;
+    }
+
+    private static String bit(boolean value) {
+        return value ? "1" : "0";
+    }
+
+    static String quote(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,366 @@
+// Timer0 and Timer1: TCON 0x88, TMOD 0x89, TL0 0x8A, TL1 0x8B, TH0 0x8C, TH1 0x8D
+// nothing ticks per machine cycle. a running timer keeps the count it had at some cycle and its
+// registers are worked out from the cycles since then whenever they are looked at. its overflow is
+// an EventScheduler event at the cycle the count wraps, computed when the timer is started,
+// written or reloaded, so a timer costs nothing between overflows.
+// counter mode (C/T) counts 1-to-0 edges of T0/T1 (P3.4/P3.5) as the pin changes.
+// GATE lets a timer run only while INT0/INT1 (P3.2/P3.3) is high.
+//   mode 0  13 bit: TH and the low 5 bits of TL
+//   mode 1  16 bit: TH:TL
+//   mode 2  8 bit TL, reloaded from TH on overflow
+//   mode 3  timer 0 only: TL0 under TR0/TF0, TH0 a second 8 bit timer under TR1/TF1. timer 1 runs
+//           on without a flag meanwhile and stops when it is put in mode 3 itself
+// the journal takes back register writes, counts and overflow flags, and the cycle a running timer
+// was last synced at. stepping back therefore leaves every timer where it was at that cycle, with its
+// overflow rescheduled from there, and running forward again repeats the same history.
+class Timers implements SfrHook, PinListener {
+    static final int TCON = 0x88;
+    static final int TMOD = 0x89;
+    static final int TL0 = 0x8A;
+    static final int TL1 = 0x8B;
+    static final int TH0 = 0x8C;
+    static final int TH1 = 0x8D;
+
+    // TCON bits, the low nibble belongs to the external interrupts
+    static final int TF1 = 0x80;
+    static final int TR1 = 0x40;
+    static final int TF0 = 0x20;
+    static final int TR0 = 0x10;
+
+    // counting units: timer 0, timer 1, and TH0 on its own while timer 0 is in mode 3
+    private static final int HIGH0 = 2;
+    private static final int UNITS = 3;
+
+    private final CPU cpu;
+    private final Memory memory;
+    private final Pins pins;
+    private final EventScheduler scheduler;
+    private Interrupts interrupts; // told about every TCON change, set once by Interrupts
+    private WriteJournal journal; // null unless reverse execution is enabled
+    private final int[] overflowEvents = new int[UNITS];
+    private int tmod;
+    private int tcon;
+    private final int[] tl = new int[2];
+    private final int[] th = new int[2];
+    private final long[] syncedAt = new long[UNITS]; // cycle the registers of each unit are up to date for
+    private final boolean[] gateHigh = new boolean[2]; // INT0/INT1 as of syncedAt, the pin may be newer
+
+    Timers(CPU cpu, Memory memory, Pins pins, EventScheduler scheduler) {
+        this.cpu = cpu;
+        this.memory = memory;
+        this.pins = pins;
+        this.scheduler = scheduler;
+        for (int unit = 0; unit < UNITS; unit++) {
+            final int overflowing = unit;
+            overflowEvents[unit] = scheduler.register(due -> overflowDue(overflowing, due));
+        }
+        for (int address = TCON; address <= TH1; address++) {
+            memory.setSfrHook(address, this);
+        }
+        pins.p3_2.addListener(this);
+        pins.p3_3.addListener(this);
+        pins.p3_4.addListener(this);
+        pins.p3_5.addListener(this);
+        readGates();
+    }
+
+    // power-on state, all stopped at 0. the CPU clears the scheduler first
+    void reset() {
+        tmod = 0;
+        tcon = 0;
+        tl[0] = tl[1] = th[0] = th[1] = 0;
+        readGates();
+        long now = cpu.getMachineCycles();
+        for (int unit = 0; unit < UNITS; unit++) {
+            syncedAt[unit] = now;
+            scheduler.cancel(overflowEvents[unit]);
+        }
+        tconChanged();
+    }
+
+    void setInterrupts(Interrupts interrupts) {
+        this.interrupts = interrupts;
+    }
+
+    void setJournal(WriteJournal journal) {
+        this.journal = journal;
+    }
+
+    // TCON as it stands, overflows due at this very cycle may not be in yet
+    int tcon() {
+        return tcon;
+    }
+
+    // IE0/IE1 from the external interrupt pins, flags cleared when an interrupt is taken
+    void setTconBits(int bits) {
+        if ((tcon | bits) != tcon) {
+            memory.journalSfr(TCON, tcon);
+            tcon |= bits;
+            tconChanged();
+        }
+    }
+
+    void clearTconBits(int bits) {
+        if ((tcon & ~bits) != tcon) {
+            memory.journalSfr(TCON, tcon);
+            tcon &= ~bits;
+            tconChanged();
+        }
+    }
+
+    private void tconChanged() {
+        if (interrupts != null) {
+            interrupts.update();
+        }
+    }
+
+    @Override
+    public int read(int address) {
+        syncAll(cpu.getMachineCycles());
+        return register(address);
+    }
+
+    @Override
+    public void write(int address, int value) {
+        syncAll(cpu.getMachineCycles());
+        memory.journalSfr(address, register(address));
+        switch (address) {
+            case TCON: tcon = value; break;
+            case TMOD: tmod = value; break;
+            case TL0: tl[0] = value; break;
+            case TL1: tl[1] = value; break;
+            case TH0: th[0] = value; break;
+            default: th[1] = value; // TH1
+        }
+        rescheduleAll();
+        if (address == TCON) {
+            tconChanged();
+        }
+    }
+
+    // journal undo: the register as it was, no sync and nothing journaled
+    @Override
+    public void restore(int address, int value) {
+        switch (address) {
+            case TCON: tcon = value; break;
+            case TMOD: tmod = value; break;
+            case TL0: tl[0] = value; break;
+            case TL1: tl[1] = value; break;
+            case TH0: th[0] = value; break;
+            default: th[1] = value; // TH1
+        }
+        rescheduleAll();
+        if (address == TCON) {
+            tconChanged();
+        }
+    }
+
+    // journal undo of sync()
+    void restoreOrigin(int unit, long cycle) {
+        syncedAt[unit] = cycle;
+        rescheduleAll();
+    }
+
+    private int register(int address) {
+        switch (address) {
+            case TCON: return tcon;
+            case TMOD: return tmod;
+            case TL0: return tl[0];
+            case TL1: return tl[1];
+            case TH0: return th[0];
+            default: return th[1]; // TH1
+        }
+    }
+
+    // TCON, TMOD, TL0, TL1, TH0, TH1 as of now, for MachineSnapshot
+    byte[] copyRegisters() {
+        byte[] values = new byte[TH1 - TCON + 1];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (byte) read(TCON + i);
+        }
+        return values;
+    }
+
+    // the registers as copyRegisters() gave them, counting on from the current machine cycle
+    void restoreRegisters(byte[] values) {
+        tcon = values[0] & 0xFF;
+        tmod = values[1] & 0xFF;
+        tl[0] = values[2] & 0xFF;
+        tl[1] = values[3] & 0xFF;
+        th[0] = values[4] & 0xFF;
+        th[1] = values[5] & 0xFF;
+        readGates();
+        long now = cpu.getMachineCycles();
+        for (int unit = 0; unit < UNITS; unit++) {
+            syncedAt[unit] = now;
+        }
+        rescheduleAll();
+        tconChanged();
+    }
+
+    // T0/T1 edges count in counter mode, INT0/INT1 levels start and stop gated timers
+    @Override
+    public void pinChanged(Pin pin, long time) {
+        if (journal != null && journal.isUndoing()) {
+            readGates();
+            rescheduleAll(); // counts come back from the journal, a gate pin may have changed
+            return;
+        }
+        if (pin == pins.p3_4 || pin == pins.p3_5) {
+            int unit = pin == pins.p3_4 ? 0 : 1;
+            if (!pin.isHigh() && counterMode(unit) && running(unit)) {
+                advance(unit, 1);
+            }
+            return;
+        }
+        syncAll(time); // up to the edge with the level the gate had until now
+        readGates();
+        rescheduleAll();
+    }
+
+    private void readGates() {
+        gateHigh[0] = pins.p3_2.isHigh();
+        gateHigh[1] = pins.p3_3.isHigh();
+    }
+
+    private void overflowDue(int unit, long due) {
+        // a register access since may have brought the unit past due already
+        sync(unit, Math.max(due, syncedAt[unit]));
+        reschedule(unit);
+    }
+
+    private int mode(int timer) {
+        return (tmod >>> (4 * timer)) & 0x03;
+    }
+
+    private boolean counterMode(int unit) {
+        return unit != HIGH0 && (tmod & (0x04 << (4 * unit))) != 0;
+    }
+
+    private boolean running(int unit) {
+        if (unit == HIGH0) {
+            return mode(0) == 3 && (tcon & TR1) != 0;
+        }
+        if (unit == 1 && mode(1) == 3) {
+            return false;
+        }
+        if (unit == 1 && mode(0) == 3) {
+            return true; // TR1 belongs to TH0 now
+        }
+        boolean gated = (tmod & (0x08 << (4 * unit))) != 0;
+        boolean enabled = (tcon & (unit == 0 ? TR0 : TR1)) != 0;
+        return enabled && (!gated || gateHigh[unit]);
+    }
+
+    // counts machine cycles right now
+    private boolean timing(int unit) {
+        return running(unit) && !counterMode(unit);
+    }
+
+    // counts until the next overflow, 1 past the largest count
+    private int range(int unit) {
+        if (unit == HIGH0) {
+            return 0x100;
+        }
+        switch (mode(unit)) {
+            case 0: return 0x2000;
+            case 1: return 0x10000;
+            default: return 0x100;
+        }
+    }
+
+    private int count(int unit) {
+        if (unit == HIGH0) {
+            return th[0];
+        }
+        switch (mode(unit)) {
+            case 0: return (th[unit] << 5) | (tl[unit] & 0x1F);
+            case 1: return (th[unit] << 8) | tl[unit];
+            default: return tl[unit];
+        }
+    }
+
+    private void setCount(int unit, int count) {
+        if (unit == HIGH0) {
+            th[0] = count;
+            return;
+        }
+        switch (mode(unit)) {
+            case 0:
+                th[unit] = count >>> 5;
+                tl[unit] = (tl[unit] & 0xE0) | (count & 0x1F); // the top 3 bits of TL keep their value
+                break;
+            case 1:
+                th[unit] = count >>> 8;
+                tl[unit] = count & 0xFF;
+                break;
+            default:
+                tl[unit] = count;
+        }
+    }
+
+    // ticks counts at once, overflows and mode 2 reloads included
+    private void advance(int unit, long ticks) {
+        if (unit == HIGH0) {
+            memory.journalSfr(TH0, th[0]);
+        } else {
+            memory.journalSfr(unit == 0 ? TL0 : TL1, tl[unit]);
+            memory.journalSfr(unit == 0 ? TH0 : TH1, th[unit]);
+        }
+        int count = count(unit);
+        int range = range(unit);
+        if (ticks < range - count) {
+            setCount(unit, count + (int) ticks);
+            return;
+        }
+        long past = ticks - (range - count); // counts after the first overflow
+        if (unit != HIGH0 && mode(unit) == 2) {
+            int reload = th[unit];
+            setCount(unit, reload + (int) (past % (0x100 - reload)));
+        } else {
+            setCount(unit, (int) (past % range));
+        }
+        if (unit == 0) {
+            setTconBits(TF0);
+        } else if (unit == HIGH0 || mode(0) != 3) {
+            setTconBits(TF1);
+        }
+    }
+
+
+    // brings the unit's registers up to now. only the origin of a timing unit is journaled, a
+    // stopped unit is synced again before it starts
+    private void sync(int unit, long now) {
+        long elapsed = now - syncedAt[unit];
+        if (elapsed > 0 && timing(unit)) {
+            if (journal != null) {
+                journal.recordTimerOrigin(unit, syncedAt[unit]);
+            }
+            syncedAt[unit] = now;
+            advance(unit, elapsed);
+        } else {
+            syncedAt[unit] = now;
+        }
+    }
+
+    private void syncAll(long now) {
+        for (int unit = 0; unit < UNITS; unit++) {
+            sync(unit, now);
+        }
+    }
+
+    // the unit must be synced
+    private void reschedule(int unit) {
+        if (timing(unit)) {
+            scheduler.schedule(overflowEvents[unit], syncedAt[unit] + range(unit) - count(unit));
+        } else {
+            scheduler.cancel(overflowEvents[unit]);
+        }
+    }
+
+    private void rescheduleAll() {
+        for (int unit = 0; unit < UNITS; unit++) {
+            reschedule(unit);
+        }
+    }
+}
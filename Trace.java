@@ -0,0 +1,195 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// trace output for the simulator core
+// events are a code plus four ints written into a preallocated ring buffer, producers never
+// lock or allocate. a daemon thread drains the ring and formats the text for the sink.
+// the level is fixed at startup (-Dsim.trace=off|error|info|debug, default off), so a guarded
+// call site like
+//     if (Trace.DEBUG_ENABLED) Trace.event(Trace.DEBUG, Trace.PIN_HIGH, address, 0, 0, 0);
+// is a constant-false branch the JIT removes when that level is off.
+final class Trace {
+    static final int OFF = 0;
+    static final int ERROR = 1;
+    static final int INFO = 2;
+    static final int DEBUG = 3;
+
+    static final int LEVEL = parseLevel(System.getProperty("sim.trace", "off"));
+    static final boolean INFO_ENABLED = LEVEL >= INFO;
+    static final boolean DEBUG_ENABLED = LEVEL >= DEBUG;
+
+    // event codes, the comment lists the meaning of a, b, c, d
+    static final int AUX_CARRY = 1;  // lower nibble 1, lower nibble 2, nibble sum
+    static final int PIN_HIGH = 2;   // SETB bit address of the pin
+    static final int PINS_RESET = 3; // -
+    static final int REGISTERS = 4;  // acc, dptr, b, pc
+    static final int PSW = 5;        // psw byte
+
+    interface TraceSink {
+        void write(String line);
+    }
+
+    private static final int CAPACITY = 1 << 14; // events, power of two
+    private static final int MASK = CAPACITY - 1;
+    private static final int STRIDE = 6;         // level, code, a, b, c, d
+
+    private static final int[] slots = LEVEL > OFF ? new int[CAPACITY * STRIDE] : null;
+    private static final AtomicLongArray published = LEVEL > OFF ? new AtomicLongArray(CAPACITY) : null;
+    private static final AtomicLong claimed = new AtomicLong();
+    private static long cursor;  // next sequence to drain, guarded by Trace.class
+    private static long dropped; // events overwritten before they were drained, guarded by Trace.class
+    private static volatile TraceSink sink = line -> System.out.println(line);
+
+    static {
+        if (LEVEL > OFF) {
+            for (int i = 0; i < CAPACITY; i++) {
+                published.set(i, -1);
+            }
+            Thread drainer = new Thread(Trace::drainLoop, "trace-drainer");
+            drainer.setDaemon(true);
+            drainer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(Trace::flush, "trace-flush"));
+        }
+    }
+
+    private Trace() {
+    }
+
+    public static void setSink(TraceSink newSink) {
+        sink = newSink;
+    }
+
+    // callers guard with INFO_ENABLED / DEBUG_ENABLED, this check only catches unguarded calls
+    static void event(int level, int code, int a, int b, int c, int d) {
+        if (level > LEVEL) {
+            return;
+        }
+        long seq = claimed.getAndIncrement();
+        int slot = (int) seq & MASK;
+        // seqlock style: mark the slot busy, fill it, then publish the sequence
+        published.setOpaque(slot, -1);
+        VarHandle.storeStoreFence();
+        int base = slot * STRIDE;
+        slots[base] = level;
+        slots[base + 1] = code;
+        slots[base + 2] = a;
+        slots[base + 3] = b;
+        slots[base + 4] = c;
+        slots[base + 5] = d;
+        published.setRelease(slot, seq);
+    }
+
+    // drains everything published so far on the calling thread
+    public static synchronized void flush() {
+        drain();
+    }
+
+    private static void drainLoop() {
+        while (true) {
+            int count;
+            synchronized (Trace.class) {
+                count = drain();
+            }
+            if (count == 0) {
+                LockSupport.parkNanos(1_000_000L);
+            }
+        }
+    }
+
+    // caller holds the Trace.class lock, returns the number of events handled
+    private static int drain() {
+        int handled = 0;
+        while (true) {
+            long head = claimed.get();
+            if (cursor >= head) {
+                break;
+            }
+            if (head - cursor > CAPACITY) {
+                // producers lapped the drainer
+                dropped += head - CAPACITY - cursor;
+                cursor = head - CAPACITY;
+            }
+            int slot = (int) cursor & MASK;
+            long seq = published.getAcquire(slot);
+            if (seq < cursor) {
+                break; // claimed but not yet written
+            }
+            if (seq == cursor) {
+                int base = slot * STRIDE;
+                int code = slots[base + 1];
+                int a = slots[base + 2];
+                int b = slots[base + 3];
+                int c = slots[base + 4];
+                int d = slots[base + 5];
+                VarHandle.loadLoadFence();
+                if (published.get(slot) == cursor) {
+                    format(code, a, b, c, d);
+                } else {
+                    dropped++;
+                }
+            } else {
+                dropped++;
+            }
+            cursor++;
+            handled++;
+        }
+        if (dropped != 0 && handled != 0) {
+            sink.write("[trace] " + dropped + " events dropped");
+            dropped = 0;
+        }
+        return handled;
+    }
+
+    private static void format(int code, int a, int b, int c, int d) {
+        TraceSink out = sink;
+        switch (code) {
+            case AUX_CARRY:
+                out.write("Operand1 Lower Nibble: " + Integer.toHexString(a));
+                out.write("Operand2 Lower Nibble: " + Integer.toHexString(b));
+                out.write("Lower Nibble Sum: " + Integer.toHexString(c));
+                break;
+            case PIN_HIGH:
+                out.write("P" + ((a - 0x80) >> 4) + "." + (a & 0x07) + " set HIGH");
+                break;
+            case PINS_RESET:
+                out.write("All ports have been reset to 0xFF.");
+                break;
+            case REGISTERS:
+                out.write("Accumulator: 0x" + String.format("%02X", a & 0xFF));
+                out.write("DPTR: 0x" + String.format("%04X", b));
+                out.write("B Register: 0x" + String.format("%02X", c & 0xFF));
+                out.write("Program Counter: 0x" + String.format("%04X", d));
+                break;
+            case PSW:
+                out.write("PSW: 0x" + String.format("%02X", a & 0xFF));
+                out.write("Carry Flag (CY): " + ((a & 0x80) != 0));
+                out.write("Auxiliary Carry Flag (AC): " + ((a & 0x40) != 0));
+                out.write("FO: " + ((a & 0x20) != 0));
+                out.write("Register Bank Select (RS1): " + ((a & 0x10) != 0));
+                out.write("Register Bank Select (RS0): " + ((a & 0x08) != 0));
+                out.write("Overflow Flag (OV): " + ((a & 0x04) != 0));
+                out.write("Parity Flag (P): " + ((a & 0x01) != 0));
+                out.write("overflow for auxiliaryCarry: " + ((a & 0x40) != 0));
+                break;
+            default:
+                out.write("[trace] unknown event " + code);
+        }
+    }
+
+    private static int parseLevel(String name) {
+        switch (name.trim().toLowerCase()) {
+            case "off":
+                return OFF;
+            case "error":
+                return ERROR;
+            case "info":
+                return INFO;
+            case "debug":
+                return DEBUG;
+            default:
+                return OFF;
+        }
+    }
+}
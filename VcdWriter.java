@@ -0,0 +1,147 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Value Change Dump of the four ports, for GTKWave and friends
+// every port change is encoded straight into a direct buffer that is written to the file channel
+// whenever it fills up, so memory stays bounded however long the run is. each port appears as
+// an 8 bit vector plus its eight single bit pins. times are machine cycles converted to ns.
+//   Pins.setPortObserver(new VcdWriter(file, pins, nanosPerCycle))  (see Machine.recordVcd)
+class VcdWriter implements PortObserver, AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAX_RECORD = 128; // worst case bytes for one port change
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final double nanosPerCycle;
+    private long lastTime = -1;
+    private IOException failure; // first write error, reported by close()
+
+    public VcdWriter(Path file, Pins pins, double nanosPerCycle) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.nanosPerCycle = nanosPerCycle;
+        writeHeader(pins);
+    }
+
+    // identifiers: pin Px.y is '!' + 8x + y, the port vector Px is 'A' + x
+    private static char pinId(int port, int bit) {
+        return (char) ('!' + port * 8 + bit);
+    }
+
+    private static char portId(int port) {
+        return (char) ('A' + port);
+    }
+
+    private void writeHeader(Pins pins) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("$version 8051 simulator $end\n");
+        sb.append("$comment machine cycle = ").append(nanosPerCycle).append(" ns $end\n");
+        sb.append("$timescale 1 ns $end\n");
+        sb.append("$scope module ports $end\n");
+        for (int port = 0; port < 4; port++) {
+            sb.append("$var wire 8 ").append(portId(port)).append(" P").append(port).append(" [7:0] $end\n");
+        }
+        for (int port = 0; port < 4; port++) {
+            sb.append("$scope module P").append(port).append(" $end\n");
+            for (int bit = 0; bit < 8; bit++) {
+                sb.append("$var wire 1 ").append(pinId(port, bit)).append(" P").append(port).append('_').append(bit).append(" $end\n");
+            }
+            sb.append("$upscope $end\n");
+        }
+        sb.append("$upscope $end\n");
+        sb.append("$enddefinitions $end\n");
+        sb.append("#0\n$dumpvars\n");
+        for (int port = 0; port < 4; port++) {
+            int value = pins.readPort(port);
+            sb.append('b').append(binary(value)).append(' ').append(portId(port)).append('\n');
+            for (int bit = 0; bit < 8; bit++) {
+                sb.append((value >> bit) & 1).append(pinId(port, bit)).append('\n');
+            }
+        }
+        sb.append("$end\n");
+        buffer.put(sb.toString().getBytes(StandardCharsets.US_ASCII));
+        lastTime = 0;
+        drain();
+    }
+
+    private static String binary(int value) {
+        String bits = Integer.toBinaryString(value | 0x100);
+        return bits.substring(1);
+    }
+
+    @Override
+    public void portChanged(int port, int oldValue, int newValue, long time) {
+        if (failure != null) {
+            return;
+        }
+        if (buffer.remaining() < MAX_RECORD) {
+            drain();
+        }
+        long nanos = Math.round(time * nanosPerCycle);
+        if (nanos != lastTime) {
+            buffer.put((byte) '#');
+            putDecimal(nanos);
+            buffer.put((byte) '\n');
+            lastTime = nanos;
+        }
+        buffer.put((byte) 'b');
+        for (int bit = 7; bit >= 0; bit--) {
+            buffer.put((byte) ('0' + ((newValue >> bit) & 1)));
+        }
+        buffer.put((byte) ' ').put((byte) portId(port)).put((byte) '\n');
+        int changed = oldValue ^ newValue;
+        for (int bit = 0; bit < 8; bit++) {
+            if ((changed & (1 << bit)) != 0) {
+                buffer.put((byte) ('0' + ((newValue >> bit) & 1))).put((byte) pinId(port, bit)).put((byte) '\n');
+            }
+        }
+    }
+
+    private void putDecimal(long value) {
+        if (value >= 10) {
+            putDecimal(value / 10);
+        }
+        buffer.put((byte) ('0' + (value % 10)));
+    }
+
+    // marks the end of the recording at `time` machine cycles, then flushes and closes the file
+    public void close(long time) throws IOException {
+        long nanos = Math.round(time * nanosPerCycle);
+        if (failure == null && nanos > lastTime) {
+            buffer.put((byte) '#');
+            putDecimal(nanos);
+            buffer.put((byte) '\n');
+        }
+        close();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void drain() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        buffer.clear();
+    }
+}
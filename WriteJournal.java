@@ -0,0 +1,198 @@
+// reverse execution journal (Machine.enableJournal)
+// a fixed ring of longs, written as the machine runs, no allocation on the recording path.
+// every instruction appends
+//   [machine cycles before it] [register word] [write]...
+// the register word has bit 63 set and packs acc, b, psw, dptr and pc before
+// the instruction; each write (RAM byte, ROM byte, port latch, SFR, interrupt levels in service,
+// timer count origin) holds the value it replaced.
+// going back an instruction undoes its writes newest first and reloads the registers.
+// when the ring wraps the oldest instructions are forgotten, so history is bounded by capacity.
+class WriteJournal {
+    // write kinds, also the argument of runBackUntilWrite
+    static final int RAM = 1;
+    static final int CODE = 2;
+    static final int PORT = 3;
+    static final int SFR = 4; // SFRs without a hook, and hooked ones whose owner journals them
+    static final int INTERRUPTS = 5; // levels in service of the interrupt controller, address unused
+    static final int TIMER_ORIGIN = 6; // cycle a running timer's count was last brought up to, see Timers
+
+    private static final long CYCLE_MASK = (1L << 53) - 1; // TIMER_ORIGIN: unit in bits 53-54, cycle below
+
+    private static final long MARKER = 1L << 63;
+
+    private final long[] ring;
+    private final int mask;
+    private final CPU cpu;
+    private final Memory memory;
+    private final Pins pins;
+    private long head;       // total entries ever written, next slot is head & mask
+    private boolean undoing; // writes made while undoing are not journaled
+
+    // capacity is rounded up to a power of two
+    WriteJournal(int capacity, CPU cpu, Memory memory, Pins pins) {
+        int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        this.ring = new long[size];
+        this.mask = size - 1;
+        this.cpu = cpu;
+        this.memory = memory;
+        this.pins = pins;
+    }
+
+    // called by CPU.cycle() before each instruction
+    void beginInstruction() {
+        ring[(int) head++ & mask] = cpu.getMachineCycles();
+        ring[(int) head++ & mask] = MARKER | packRegisters();
+    }
+
+    void recordRam(int address, int oldValue) {
+        record(RAM, address, oldValue);
+    }
+
+    void recordCode(int address, int oldValue) {
+        record(CODE, address, oldValue);
+    }
+
+    void recordPort(int port, int oldValue) {
+        record(PORT, port, oldValue);
+    }
+
+    void recordSfr(int address, int oldValue) {
+        record(SFR, address, oldValue);
+    }
+
+    void recordInterrupts(int oldState) {
+        record(INTERRUPTS, 0, oldState);
+    }
+
+    void recordTimerOrigin(int unit, long cycle) {
+        if (!undoing) {
+            ring[(int) head++ & mask] = ((long) TIMER_ORIGIN << 56) | ((long) unit << 53) | (cycle & CYCLE_MASK);
+        }
+    }
+
+    private void record(int kind, int address, int oldValue) {
+        if (!undoing) {
+            ring[(int) head++ & mask] = ((long) kind << 56) | ((long) address << 8) | (oldValue & 0xFF);
+        }
+    }
+
+    // true while an instruction is being undone, pin listeners then see restored levels, not program activity
+    boolean isUndoing() {
+        return undoing;
+    }
+
+    public void clear() {
+        head = 0;
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    // undoes the last instruction, false if the journal holds no complete instruction
+    public boolean stepBack() {
+        return undoInstruction(0, -1) >= 0;
+    }
+
+    // steps back until the PC is pc (the machine is then just before executing the instruction
+    // at pc). false if history ran out first, the machine is then at the oldest state kept
+    public boolean runBackToPc(int pc) {
+        while (true) {
+            if (undoInstruction(0, -1) < 0) {
+                return false;
+            }
+            if (cpu.getProgramCounter() == pc) {
+                return true;
+            }
+        }
+    }
+
+    // steps back until the instruction that last wrote address (RAM/CODE/SFR byte or PORT number)
+    // has been undone, so the machine is just before that write. false if history ran out
+    public boolean runBackUntilWrite(int kind, int address) {
+        while (true) {
+            int matched = undoInstruction(kind, address);
+            if (matched < 0) {
+                return false;
+            }
+            if (matched > 0) {
+                return true;
+            }
+        }
+    }
+
+    // -1 nothing to undo, otherwise the number of undone writes matching (kind, address)
+    private int undoInstruction(int kind, int address) {
+        long oldest = Math.max(0, head - ring.length);
+        long marker = head - 1;
+        while (marker > oldest && (ring[(int) marker & mask] & MARKER) == 0) {
+            marker--;
+        }
+        // the cycles entry sits just below the marker and must still be in the ring
+        if (marker <= oldest || (ring[(int) marker & mask] & MARKER) == 0) {
+            return -1;
+        }
+
+        int matched = 0;
+        undoing = true;
+        Debugger watcher = memory.getWatcher();
+        memory.setWatcher(null); // putting old values back is no access watchpoints should see
+        try {
+            cpu.restoreCounters(cpu.getInstructionCount() - 1, ring[(int) (marker - 1) & mask]);
+            for (long i = head - 1; i > marker; i--) {
+                long entry = ring[(int) i & mask];
+                int entryKind = (int) (entry >>> 56);
+                int entryAddress = (int) (entry >>> 8) & 0xFFFF;
+                byte oldValue = (byte) entry;
+                switch (entryKind) {
+                    case RAM:
+                        memory.writeDataByte(entryAddress, oldValue);
+                        break;
+                    case CODE:
+                        memory.writeByte(entryAddress, oldValue);
+                        break;
+                    case PORT:
+                        pins.writePort(entryAddress, oldValue & 0xFF);
+                        break;
+                    case SFR:
+                        memory.restoreSfr(entryAddress, oldValue);
+                        break;
+                    case INTERRUPTS:
+                        cpu.getInterrupts().restoreState(oldValue & 0xFF);
+                        break;
+                    case TIMER_ORIGIN:
+                        cpu.getTimers().restoreOrigin((int) (entry >>> 53) & 0x03, entry & CYCLE_MASK);
+                        break;
+                    default:
+                        throw new IllegalStateException("Corrupt journal entry: " + Long.toHexString(entry));
+                }
+                if (entryKind == kind && entryAddress == address) {
+                    matched++;
+                }
+            }
+            unpackRegisters(ring[(int) marker & mask]);
+        } finally {
+            undoing = false;
+            memory.setWatcher(watcher);
+        }
+        head = marker - 1;
+        return matched;
+    }
+
+    // bits: acc 0-7, b 8-15, psw 16-23 (every flag is in it), dptr 24-39, pc 40-55
+    private long packRegisters() {
+        return (cpu.getAccumulator() & 0xFFL)
+                | (cpu.getb_reg() & 0xFFL) << 8
+                | (cpu.getPsw() & 0xFFL) << 16
+                | (cpu.getdptr() & 0xFFFFL) << 24
+                | (cpu.getProgramCounter() & 0xFFFFL) << 40;
+    }
+
+    private void unpackRegisters(long word) {
+        cpu.setAccumulator((byte) word);
+        cpu.setb_reg((byte) (word >>> 8));
+        cpu.setpsw((byte) (word >>> 16));
+        cpu.setdptr((int) (word >>> 24) & 0xFFFF);
+        cpu.setProgramCounter((int) (word >>> 40) & 0xFFFF);
+    }
+}
@@ -0,0 +1,124 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// JMH suite over the workloads in Benchmark.java, run from the repository root so
+// sample_programs.txt is found:
+//   mvn -B package
+//   java -jar target/benchmarks.jar -rf json -rff jmh-result.json
+// the interpreter benchmarks report program runs per second and, as the "instructions" counter,
+// simulated instructions per second. -p engine=TABLE, -p family=logic etc. narrow a run.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Dsim.trace=off")
+public class SimulatorBenchmarks {
+
+    @State(Scope.Thread)
+    public static class OpcodeFamily {
+        @Param({"mov", "add_subb", "logic", "inc_dec", "setb"})
+        String family;
+        @Param({"REFERENCE", "TABLE", "DECODED", "TRANSLATED"})
+        String engine;
+        LongSupplier workload;
+
+        @Setup
+        public void setup() throws ReflectiveOperationException {
+            workload = workload("opcodeFamily", family, engine);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SampleProgram {
+        @Param({"test_program_random", "add_instruction_test", "sub_instruction_test", "dec_rn_test", "inc_a_and_inc_rn_test"})
+        String program;
+        @Param({"REFERENCE", "TABLE", "DECODED", "TRANSLATED"})
+        String engine;
+        LongSupplier workload;
+
+        @Setup
+        public void setup() throws ReflectiveOperationException {
+            workload = workload("sampleProgram", program, engine);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Loader {
+        LongSupplier workload;
+
+        @Setup
+        public void setup() throws ReflectiveOperationException {
+            workload = workload("loader");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Peripherals {
+        LongSupplier workload;
+
+        @Setup
+        public void setup() throws ReflectiveOperationException {
+            workload = workload("peripherals");
+        }
+    }
+
+    // simulated instructions, reported next to the primary metric
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Instructions {
+        public long instructions;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            instructions = 0;
+        }
+    }
+
+    @Benchmark
+    public long opcodeFamily(OpcodeFamily state, Instructions counter) {
+        long executed = state.workload.getAsLong();
+        counter.instructions += executed;
+        return executed;
+    }
+
+    @Benchmark
+    public long program(SampleProgram state, Instructions counter) {
+        long executed = state.workload.getAsLong();
+        counter.instructions += executed;
+        return executed;
+    }
+
+    @Benchmark
+    public long loadOpcodesFromFile(Loader state) {
+        return state.workload.getAsLong();
+    }
+
+    @Benchmark
+    public long peripheralsEvaluate(Peripherals state) {
+        return state.workload.getAsLong();
+    }
+
+    // the simulator lives in the default package, which cannot be imported from here
+    private static LongSupplier workload(String factory, String... args) throws ReflectiveOperationException {
+        Class<?>[] types = new Class<?>[args.length];
+        Arrays.fill(types, String.class);
+        return (LongSupplier) Class.forName("Benchmark").getMethod(factory, types).invoke(null, (Object[]) args);
+    }
+}
@@ -1,26 +1,159 @@
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
 interface Peripheral {
     void connect(Pin... pins);
 }
 
+// peripheral driven by pin edges instead of polling: it subscribes to its input pins, and
+// evaluate() only runs when one of them changes. every change of the result is logged with
+// its timestamp, so the cost follows pin activity, not the number of cycles simulated.
+abstract class EventPeripheral implements Peripheral, PinListener {
+    private static final Pin[] NO_PINS = new Pin[0];
+
+    private Pin[] inputs = NO_PINS;
+    private int state;
+    private final StateHistory history = new StateHistory();
+
+    // subscribes to pins (dropping any earlier inputs) and records the state they give right now
+    protected void attach(Pin... pins) {
+        disconnect();
+        inputs = pins.clone();
+        for (Pin pin : inputs) {
+            pin.addListener(this);
+        }
+        state = evaluate();
+        history.record(inputs.length == 0 ? 0 : inputs[0].now(), state);
+    }
+
+    // stops listening, the last state and the history stay readable
+    public void disconnect() {
+        for (Pin pin : inputs) {
+            pin.removeListener(this);
+        }
+        inputs = NO_PINS;
+    }
+
+    @Override
+    public void pinChanged(Pin pin, long time) {
+        int next = evaluate();
+        if (next != state) {
+            state = next;
+            history.record(time, next);
+        }
+    }
+
+    // state as a small int computed from the input pins
+    protected abstract int evaluate();
+
+    // human readable form of a state returned by evaluate()
+    public abstract String describe(int state);
+
+    public int getState() {
+        return state;
+    }
+
+    public StateHistory getHistory() {
+        return history;
+    }
+}
+
+// a single pin. port pins (P0..P3) are views of one bit of the packed port registers in Pins,
+// resolved once to (port, bit), so the level lives in the port byte and not in the Pin.
+// the other pins (RST, XTAL1, Ground...) keep their own level.
 class Pin {
-    private boolean state; 
+    private static final PinListener[] NO_LISTENERS = new PinListener[0];
+
+    private final Pins owner; // null for pins that are not port bits
+    private final int port;
+    private final int mask;   // 1 << bit
+    private boolean state;    // level of a pin that is not a port bit
     private String pinName; // For identification (e.g., P1_0 for pin 0 of Port 1)
+    private PinListener[] listeners = NO_LISTENERS;
+    private LongSupplier clock; // timestamps for listeners of pins that are not port bits
 
     public Pin(String pinName) {
         this.pinName = pinName;
+        this.owner = null;
+        this.port = -1;
+        this.mask = 0;
         this.state = false; // Default to LOW
     }
 
+    // view of bit `bit` of port `port`
+    Pin(Pins owner, int port, int bit) {
+        this.pinName = "P" + port + "_" + bit;
+        this.owner = owner;
+        this.port = port;
+        this.mask = 1 << bit;
+    }
+
+    // listeners only hear about real edges, setting a HIGH pin high again is silent
     public void setHigh() {
-        this.state = true;
+        if (owner != null) {
+            owner.setPortBits(port, mask);
+        } else if (!state) {
+            this.state = true;
+            if (listeners.length != 0) {
+                fireChanged(now());
+            }
+        }
     }
 
     public void setLow() {
-        this.state = false;
+        if (owner != null) {
+            owner.clearPortBits(port, mask);
+        } else if (state) {
+            this.state = false;
+            if (listeners.length != 0) {
+                fireChanged(now());
+            }
+        }
     }
 
     public boolean isHigh() {
-        return state;
+        return owner != null ? (owner.readPort(port) & mask) != 0 : state;
+    }
+
+    public void addListener(PinListener listener) {
+        PinListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+        if (owner != null) {
+            owner.listenersChanged(port, mask, true);
+        }
+    }
+
+    public void removeListener(PinListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                PinListener[] updated = new PinListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, updated, 0, i);
+                System.arraycopy(listeners, i + 1, updated, i, listeners.length - i - 1);
+                listeners = updated.length == 0 ? NO_LISTENERS : updated;
+                if (owner != null) {
+                    owner.listenersChanged(port, mask, listeners.length != 0);
+                }
+                return;
+            }
+        }
+    }
+
+    void fireChanged(long time) {
+        for (PinListener listener : listeners) {
+            listener.pinChanged(this, time);
+        }
+    }
+
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public long now() {
+        if (owner != null) {
+            return owner.now();
+        }
+        return clock == null ? 0 : clock.getAsLong();
     }
 
     public String getPinName() {
@@ -29,62 +162,204 @@ class Pin {
 
     @Override
     public String toString() {
-        return pinName + ": " + (state ? "HIGH" : "LOW");
+        return pinName + ": " + (isHigh() ? "HIGH" : "LOW");
     }
 }
 
 class Pins {
+	// P0..P3 latches, one packed byte per port, bit n = Px.n. all 1s from power-on, like the 8051's
+	private final int[] ports = {0xFF, 0xFF, 0xFF, 0xFF};
+	// per port, the bits that have at least one listener; a port write only looks up pins for these
+	private final int[] listened = new int[4];
+	private final Pin[] portPins = new Pin[32]; // index port * 8 + bit
+	private LongSupplier clock;
+	private PortObserver observer;
+	private WriteJournal journal; // null unless reverse execution is enabled
+
 	//port0
-    public Pin p0_0 = new Pin("P0_0");//AD0	
-    public Pin p0_1 = new Pin("P0_1");//AD1
-	public Pin p0_2 = new Pin("P0_2");//AD2
-	public Pin p0_3 = new Pin("P0_3");//AD3
-	public Pin p0_4 = new Pin("P0_4");//AD4
-	public Pin p0_5 = new Pin("P0_5");//AD5
-	public Pin p0_6 = new Pin("P0_6");//AD6
-	public Pin p0_7 = new Pin("P0_7");//AD7
+    public final Pin p0_0 = portPin(0, 0);//AD0
+    public final Pin p0_1 = portPin(0, 1);//AD1
+	public final Pin p0_2 = portPin(0, 2);//AD2
+	public final Pin p0_3 = portPin(0, 3);//AD3
+	public final Pin p0_4 = portPin(0, 4);//AD4
+	public final Pin p0_5 = portPin(0, 5);//AD5
+	public final Pin p0_6 = portPin(0, 6);//AD6
+	public final Pin p0_7 = portPin(0, 7);//AD7
 	
 	//port1
-    public Pin p1_0 = new Pin("P1_0");
-    public Pin p1_1 = new Pin("P1_1");
-	public Pin p1_2 = new Pin("P1_2");
-	public Pin p1_3 = new Pin("P1_3");
-	public Pin p1_4 = new Pin("P1_4");
-	public Pin p1_5 = new Pin("P1_5");
-	public Pin p1_6 = new Pin("P1_6");	
-	public Pin p1_7 = new Pin("P2_7");
+    public final Pin p1_0 = portPin(1, 0);
+    public final Pin p1_1 = portPin(1, 1);
+	public final Pin p1_2 = portPin(1, 2);
+	public final Pin p1_3 = portPin(1, 3);
+	public final Pin p1_4 = portPin(1, 4);
+	public final Pin p1_5 = portPin(1, 5);
+	public final Pin p1_6 = portPin(1, 6);
+	public final Pin p1_7 = portPin(1, 7);
 	
 	//port2
-	public Pin p2_0 = new Pin("P2_0");//AD8
-    public Pin p2_1 = new Pin("P2_1");//AD9
-	public Pin p2_2 = new Pin("P2_2");//AD10
-	public Pin p2_3 = new Pin("P2_3");//AD11
-	public Pin p2_4 = new Pin("P2_4");//AD12
-	public Pin p2_5 = new Pin("P2_5");//AD13
-	public Pin p2_6 = new Pin("P2_6");//AD14
-	public Pin p2_7 = new Pin("P2_7");//AD15
+	public final Pin p2_0 = portPin(2, 0);//AD8
+    public final Pin p2_1 = portPin(2, 1);//AD9
+	public final Pin p2_2 = portPin(2, 2);//AD10
+	public final Pin p2_3 = portPin(2, 3);//AD11
+	public final Pin p2_4 = portPin(2, 4);//AD12
+	public final Pin p2_5 = portPin(2, 5);//AD13
+	public final Pin p2_6 = portPin(2, 6);//AD14
+	public final Pin p2_7 = portPin(2, 7);//AD15
 	
 	//port3
-	public Pin p3_0 = new Pin("P3_0"); //RXD
-    public Pin p3_1 = new Pin("P3_1"); //TXD
-	public Pin p3_2 = new Pin("P3_2"); //INT0~
-	public Pin p3_3 = new Pin("P3_3"); //INT1~
-	public Pin p3_4 = new Pin("P3_4"); //TO
-	public Pin p3_5 = new Pin("P3_5"); //T1
-	public Pin p3_6 = new Pin("P3_6"); //WR~	
-	public Pin p3_7 = new Pin("P3_7"); //RD~
+	public final Pin p3_0 = portPin(3, 0); //RXD
+    public final Pin p3_1 = portPin(3, 1); //TXD
+	public final Pin p3_2 = portPin(3, 2); //INT0~
+	public final Pin p3_3 = portPin(3, 3); //INT1~
+	public final Pin p3_4 = portPin(3, 4); //TO
+	public final Pin p3_5 = portPin(3, 5); //T1
+	public final Pin p3_6 = portPin(3, 6); //WR~
+	public final Pin p3_7 = portPin(3, 7); //RD~
 
 	//non-port pins
-	public Pin RST = new Pin("RST");
-	public Pin XTAL1 = new Pin("XTAL1");
-	public Pin XTAL2 = new Pin("XTAL2");
-	public Pin GND = new Pin("GND");
-	public Pin VCC = new Pin("VCC");
-	public Pin EA_VPP = new Pin("EA_VPP");// EA~/VPP
-	public Pin ALE_PROG = new Pin("ALE_PROG"); //ALE/PROG~
-	public Pin PSEN = new Pin("PSEN"); //~PSEN
-	
-	
+	public final Pin RST = new Pin("RST");
+	public final Pin XTAL1 = new Pin("XTAL1");
+	public final Pin XTAL2 = new Pin("XTAL2");
+	public final Pin GND = new Pin("GND");
+	public final Pin VCC = new Pin("VCC");
+	public final Pin EA_VPP = new Pin("EA_VPP");// EA~/VPP
+	public final Pin ALE_PROG = new Pin("ALE_PROG"); //ALE/PROG~
+	public final Pin PSEN = new Pin("PSEN"); //~PSEN
+
+	private final Pin[] otherPins = {RST, XTAL1, XTAL2, GND, VCC, EA_VPP, ALE_PROG, PSEN};
+
+	private Pin portPin(int port, int bit) {
+		Pin pin = new Pin(this, port, bit);
+		portPins[port * 8 + bit] = pin;
+		return pin;
+	}
+
+	public int readPort(int port) {
+		return ports[port];
+	}
+
+	// byte-wide port write (MOV P1,A), listeners of every pin that changed are told
+	public void writePort(int port, int value) {
+		int old = ports[port];
+		value &= 0xFF;
+		if (value != old) {
+			portWritten(port, old, value);
+		}
+	}
+
+	// SETB Px.y / CLR Px.y are one OR / AND on the port byte
+	public void setPortBits(int port, int mask) {
+		int old = ports[port];
+		if ((old | mask) != old) {
+			portWritten(port, old, old | mask);
+		}
+	}
+
+	public void clearPortBits(int port, int mask) {
+		int old = ports[port];
+		if ((old & ~mask) != old) {
+			portWritten(port, old, old & ~mask);
+		}
+	}
+
+	private void portWritten(int port, int old, int value) {
+		if (journal != null) {
+			journal.recordPort(port, old);
+		}
+		ports[port] = value;
+		if (observer != null) {
+			observer.portChanged(port, old, value, now());
+		}
+		int changed = (old ^ value) & listened[port];
+		if (changed != 0) {
+			notifyChanged(port, changed);
+		}
+	}
+
+	void setJournal(WriteJournal journal) {
+		this.journal = journal;
+	}
+
+	// whole-port observer (VCD recording), null when nobody records
+	public void setPortObserver(PortObserver observer) {
+		this.observer = observer;
+	}
+
+	// all port latches to 0xFF, the 8051 reset value (INT0/INT1 then read high, no request)
+	public void resetPorts() {
+		for (int port = 0; port < 4; port++) {
+			writePort(port, 0xFF);
+		}
+	}
+
+	private void notifyChanged(int port, int changed) {
+		long time = now();
+		for (int bit = 0; bit < 8; bit++) {
+			if ((changed & (1 << bit)) != 0) {
+				portPins[port * 8 + bit].fireChanged(time);
+			}
+		}
+	}
+
+	void listenersChanged(int port, int mask, boolean hasListeners) {
+		listened[port] = hasListeners ? listened[port] | mask : listened[port] & ~mask;
+	}
+
+	// levels of RST, XTAL1, XTAL2, GND, VCC, EA_VPP, ALE_PROG, PSEN as bits 0..7
+	public int readOtherPins() {
+		int levels = 0;
+		for (int i = 0; i < otherPins.length; i++) {
+			if (otherPins[i].isHigh()) {
+				levels |= 1 << i;
+			}
+		}
+		return levels;
+	}
+
+	public void writeOtherPins(int levels) {
+		for (int i = 0; i < otherPins.length; i++) {
+			if ((levels & (1 << i)) != 0) {
+				otherPins[i].setHigh();
+			} else {
+				otherPins[i].setLow();
+			}
+		}
+	}
+
+	// time source for pin change timestamps, Machine uses the CPU's machine-cycle counter
+	public void setClock(LongSupplier clock) {
+		this.clock = clock;
+		for (Pin pin : otherPins) {
+			pin.setClock(clock);
+		}
+	}
+
+	long now() {
+		return clock == null ? 0 : clock.getAsLong();
+	}
+
+	public Pin getPortPin(int port, int bit) {
+		return portPins[port * 8 + bit];
+	}
+
+	// accepts p1_0, P1_0 and P1.0 style names for port pins and the field names of the others
+	public Pin getPin(String pinName) {
+		String name = pinName.trim();
+		if (name.length() == 4 && (name.charAt(0) == 'P' || name.charAt(0) == 'p')
+				&& (name.charAt(2) == '_' || name.charAt(2) == '.')) {
+			int port = name.charAt(1) - '0';
+			int bit = name.charAt(3) - '0';
+			if (port >= 0 && port < 4 && bit >= 0 && bit < 8) {
+				return portPins[port * 8 + bit];
+			}
+		}
+		for (Pin pin : otherPins) {
+			if (pin.getPinName().equals(name)) {
+				return pin;
+			}
+		}
+		throw new IllegalArgumentException("Unknown pin: " + pinName);
+	}
 }
 
 class VoltageChecker implements Peripheral {
@@ -104,7 +379,7 @@ class VoltageChecker implements Peripheral {
     }
 }
 
-class LED implements Peripheral {
+class LED extends EventPeripheral {
     private Pin anode;
     private Pin cathode;
     private String color;
@@ -122,17 +397,24 @@ class LED implements Peripheral {
         if (pins.length == 2) {
             this.anode = pins[0];
             this.cathode = pins[1];
+            attach(pins);
         } else {
             throw new IllegalArgumentException("LED requires 2 pins (anode and cathode).");
         }
     }
 
+    @Override
+    protected int evaluate() {
+        return anode.isHigh() && !cathode.isHigh() ? 1 : 0;
+    }
+
+    @Override
+    public String describe(int state) {
+        return color + (state != 0 ? " LED is ON" : " LED is OFF");
+    }
+
     public String checkState() {
-        if (anode.isHigh() && !cathode.isHigh()) {
-            return color + " LED is ON";
-        } else {
-            return color + " LED is OFF";
-        }
+        return describe(getState());
     }
 
     public Pin getCathode() {
@@ -140,7 +422,7 @@ class LED implements Peripheral {
     }
 }
 
-class seven_seg_display implements Peripheral {
+class seven_seg_display extends EventPeripheral {
     private static int instanceCount = 0;
     public final int id;
     private Pin en;
@@ -156,6 +438,11 @@ class seven_seg_display implements Peripheral {
         this.id = ++instanceCount;
     }
 
+    // explicit id, used by Netlist so ids don't depend on other machines in the JVM
+    public seven_seg_display(int id) {
+        this.id = id;
+    }
+
     @Override
     public void connect(Pin... pins) {
         if (pins.length == 8) {
@@ -167,38 +454,60 @@ class seven_seg_display implements Peripheral {
             this.E  = pins[5];
             this.F  = pins[6];
             this.G  = pins[7];
+            attach(pins);
         } else {
             throw new IllegalArgumentException("7 SEGMENT DISPLAY requires 8 pins (EN and 7 data pins).");
         }
     }
 
-    public String[] run_ssd() {
+    // bit 7 = enable, bits 0..6 = segments A..G
+    @Override
+    protected int evaluate() {
         if (!en.isHigh()) {
+            return 0;
+        }
+        return 0x80 | (A.isHigh() ? 0x01 : 0) | (B.isHigh() ? 0x02 : 0) | (C.isHigh() ? 0x04 : 0)
+                | (D.isHigh() ? 0x08 : 0) | (E.isHigh() ? 0x10 : 0) | (F.isHigh() ? 0x20 : 0) | (G.isHigh() ? 0x40 : 0);
+    }
+
+    @Override
+    public String describe(int state) {
+        String[] lines = render(state);
+        return lines[0] + "\n" + lines[1] + "\n" + lines[2];
+    }
+
+    public String[] run_ssd() {
+        return render(getState());
+    }
+
+    private static String[] render(int state) {
+        if ((state & 0x80) == 0) {
             return new String[]{"Display disabled!", "", ""};
         }
 
-        if (A.isHigh() && B.isHigh() && C.isHigh() && D.isHigh() && E.isHigh() && F.isHigh() && !G.isHigh()) {
-            return new String[]{" __ ", "|  |", "|__|"}; // code for 0
-        } else if (!A.isHigh() && B.isHigh() && C.isHigh() && !D.isHigh() && !E.isHigh() && !F.isHigh() && !G.isHigh()) {
-            return new String[]{"   ", "  |", "  |"}; // code for 1
-        } else if (A.isHigh() && B.isHigh() && !C.isHigh() && D.isHigh() && E.isHigh() && !F.isHigh() && G.isHigh()) {
-            return new String[]{" __ ", " __|", "|__ "}; // code for 2
-        } else if (A.isHigh() && B.isHigh() && C.isHigh() && D.isHigh() && !E.isHigh() && !F.isHigh() && G.isHigh()) {
-            return new String[]{" __ ", " __|", " __|"}; // code for 3
-        } else if (!A.isHigh() && B.isHigh() && C.isHigh() && !D.isHigh() && !E.isHigh() && F.isHigh() && G.isHigh()) {
-            return new String[]{"    ", "|__|", "   |"}; // code for 4
-        } else if (A.isHigh() && !B.isHigh() && C.isHigh() && D.isHigh() && !E.isHigh() && F.isHigh() && G.isHigh()) {
-            return new String[]{" __ ", "|__ ", " __|"}; // code for 5
-        } else if (A.isHigh() && !B.isHigh() && C.isHigh() && D.isHigh() && E.isHigh() && F.isHigh() && G.isHigh()) {
-            return new String[]{" __ ", "|__ ", "|__|"}; // code for 6
-        } else if (A.isHigh() && B.isHigh() && C.isHigh() && !D.isHigh() && !E.isHigh() && !F.isHigh() && G.isHigh()) {
-            return new String[]{" __ ", "    |", "    							|"}; // code for 7
-        } else if (A.isHigh() && B.isHigh() && C.isHigh() && D.isHigh() && E.isHigh() && F.isHigh() && G.isHigh()) {
-            return new String[]{" __ ", "|__|", "|__|"}; // code for 8
-        } else if (A.isHigh() && B.isHigh() && C.isHigh() && D.isHigh() && !E.isHigh() && F.isHigh() && G.isHigh()) {
-            return new String[]{" __ ", "|__|", " __|"}; // code for 9
-        } else {
-            return new String[]{"   ", "   ", "   "}; // blank display
+        switch (state & 0x7F) {
+            case 0x3F:
+                return new String[]{" __ ", "|  |", "|__|"}; // code for 0
+            case 0x06:
+                return new String[]{"   ", "  |", "  |"}; // code for 1
+            case 0x5B:
+                return new String[]{" __ ", " __|", "|__ "}; // code for 2
+            case 0x4F:
+                return new String[]{" __ ", " __|", " __|"}; // code for 3
+            case 0x66:
+                return new String[]{"    ", "|__|", "   |"}; // code for 4
+            case 0x6D:
+                return new String[]{" __ ", "|__ ", " __|"}; // code for 5
+            case 0x7D:
+                return new String[]{" __ ", "|__ ", "|__|"}; // code for 6
+            case 0x47:
+                return new String[]{" __ ", "    |", "    							|"}; // code for 7
+            case 0x7F:
+                return new String[]{" __ ", "|__|", "|__|"}; // code for 8
+            case 0x6F:
+                return new String[]{" __ ", "|__|", " __|"}; // code for 9
+            default:
+                return new String[]{"   ", "   ", "   "}; // blank display
         }
     }
 
@@ -215,7 +524,7 @@ class seven_seg_display implements Peripheral {
 
 
 
-class Resistor implements Peripheral {
+class Resistor extends EventPeripheral {
     private Pin rpin1;
     private Pin rpin2;
     private double resistance;
@@ -233,19 +542,30 @@ class Resistor implements Peripheral {
         if (pins.length == 2) {
             this.rpin1 = pins[0];
             this.rpin2 = pins[1];
+            attach(pins);
         } else {
             throw new IllegalArgumentException("Resistor requires 2 pins.");
         }
     }
 
-    public String checkVoltageDrop() {
-        if (rpin1.isHigh() && !rpin2.isHigh()) {
+    @Override
+    protected int evaluate() {
+        return rpin1.isHigh() && !rpin2.isHigh() ? 1 : 0;
+    }
+
+    @Override
+    public String describe(int state) {
+        if (state != 0) {
             return "Current flows through the resistor with resistance: " + resistance + " ohms.";
         } else {
             return "No current flows through the resistor.";
         }
     }
 
+    public String checkVoltageDrop() {
+        return describe(getState());
+    }
+
     public double getResistance() {
         return resistance;
     }
@@ -255,7 +575,7 @@ class Resistor implements Peripheral {
     }
 }
 
-class npn implements Peripheral {
+class npn extends EventPeripheral {
     private static int instanceCount = 0;
     public final int id;
     private Pin base;
@@ -266,6 +586,10 @@ class npn implements Peripheral {
         this.id = ++instanceCount; 
     }
 
+    public npn(int id) {
+        this.id = id;
+    }
+
     public static void resetInstanceCount() {
         instanceCount = 0; 
     }
@@ -276,20 +600,31 @@ class npn implements Peripheral {
             this.base = pins[0];
             this.collector = pins[1];
             this.emitter = pins[2];
+            attach(pins);
         } else {
             throw new IllegalArgumentException("NPN Transistor requires 3 pins.");
         }
     }
 
-    public String checkVoltage() {
-        String status = (base.isHigh() && !emitter.isHigh() && collector.isHigh()) ? 
+    @Override
+    protected int evaluate() {
+        return base.isHigh() && !emitter.isHigh() && collector.isHigh() ? 1 : 0;
+    }
+
+    @Override
+    public String describe(int state) {
+        String status = state != 0 ? 
                         "Current flows through the npn" : 
                         "No current flows through the npn";
         return "npn" + id + ": " + status + ".";
     }
+
+    public String checkVoltage() {
+        return describe(getState());
+    }
 }
 
-class pnp implements Peripheral {
+class pnp extends EventPeripheral {
     private static int instanceCount = 0;
     public final int id;
     private Pin base;
@@ -300,6 +635,10 @@ class pnp implements Peripheral {
         this.id = ++instanceCount; 
     }
 
+    public pnp(int id) {
+        this.id = id;
+    }
+
     public static void resetInstanceCount() {
         instanceCount = 0; 
     }
@@ -310,17 +649,28 @@ class pnp implements Peripheral {
             this.base = pins[0];
             this.collector = pins[1];
             this.emitter = pins[2];
+            attach(pins);
         } else {
             throw new IllegalArgumentException("PNP Transistor requires 3 pins.");
         }
     }
 
-    public String checkVoltage() {
-        String status = (!base.isHigh() && emitter.isHigh() && !collector.isHigh()) ? 
+    @Override
+    protected int evaluate() {
+        return !base.isHigh() && emitter.isHigh() && !collector.isHigh() ? 1 : 0;
+    }
+
+    @Override
+    public String describe(int state) {
+        String status = state != 0 ? 
                         "Current flows through the pnp" : 
                         "No current flows through the pnp";
         return "pnp" + id + ": " + status + ".";
     }
+
+    public String checkVoltage() {
+        return describe(getState());
+    }
 }
 
 